@@ -153,7 +153,8 @@ public class ConnectionDialogController {
         ApplicationContext context = ApplicationContext.getInstance();
         if (selected != null) {
             System.out.println("Connecting to: " + selected.nameSpace() + " -> " + selected.connectionString());
-            if (context.currentManager() != null) context.currentManager().closeAllReceivers();
+            // running jobs may still be using the cached receivers
+            if (context.currentManager() != null && !context.jobs().hasActiveJobs()) context.currentManager().closeAllReceivers();
             context.registerManager(selected.connectionString());
             context.getMainUIController().loadTreeView();
         }
@@ -1,44 +1,70 @@
 package com.dutils.servicebusviewer;
 
 import atlantafx.base.theme.*;
-import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
 import com.azure.messaging.servicebus.administration.models.EntityStatus;
 import com.azure.messaging.servicebus.administration.models.QueueProperties;
 import com.azure.messaging.servicebus.administration.models.SubscriptionProperties;
 import com.azure.messaging.servicebus.administration.models.TopicProperties;
+import com.azure.messaging.servicebus.models.DeadLetterOptions;
 import com.dutils.servicebusviewer.config.ApplicationContext;
+import com.dutils.servicebusviewer.job.Job;
+import com.dutils.servicebusviewer.job.JobManager.Lock;
+import com.dutils.servicebusviewer.mgr.MainUIJobsViewManager;
 import com.dutils.servicebusviewer.mgr.MainUIMessageTableViewManager;
 import com.dutils.servicebusviewer.mgr.MainUITreeAndTableViewManager;
 import com.dutils.servicebusviewer.model.DataTreeItem;
+import com.dutils.servicebusviewer.model.MessageFilter;
+import com.dutils.servicebusviewer.model.MessageRow;
 import com.dutils.servicebusviewer.model.NodeType;
+import com.dutils.servicebusviewer.servicebus.DlqTriage;
+import com.dutils.servicebusviewer.servicebus.DuplicateScan;
+import com.dutils.servicebusviewer.servicebus.MessageImport;
+import com.dutils.servicebusviewer.servicebus.MessageMover;
+import com.dutils.servicebusviewer.servicebus.RateGovernor;
+import com.dutils.servicebusviewer.servicebus.RestorePipeline;
+import com.dutils.servicebusviewer.servicebus.SelectiveOperation;
+import com.dutils.servicebusviewer.servicebus.ServiceBusManager;
 import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.FxBatcher;
 import com.dutils.servicebusviewer.utils.FxClipboardCopyHandler;
 import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.LongHashSet;
 import com.dutils.servicebusviewer.utils.MessageUtils;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
+import javafx.stage.Modality;
 import javafx.util.Pair;
 import org.apache.commons.lang3.time.StopWatch;
 
 import java.io.File;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.dutils.servicebusviewer.utils.DialogUtils.*;
+import static java.util.Map.entry;
+import static com.dutils.servicebusviewer.utils.Utils.createColumn;
 import static com.dutils.servicebusviewer.utils.Utils.fd;
 import static com.dutils.servicebusviewer.utils.Utils.getEntityProperty;
 
@@ -53,7 +79,15 @@ public class MainUIController implements Initializable {
     public Button btnRestoreSel;
     public Button btnRestoreAll;
     public Button btnSaveMsg;
+    public Button btnDeleteSel;
+    public Button btnDeadLetterSel;
     public MenuItem mnuStatus;
+    public MenuItem mnuStats;
+    public MenuItem mnuTriage;
+    public MenuItem mnuDuplicates;
+    public MenuItem mnuExport;
+    public MenuItem mnuImport;
+    public MenuItem mnuRateLimit;
     @FXML
     private ToggleGroup styleGroup;
 
@@ -62,9 +96,15 @@ public class MainUIController implements Initializable {
     @FXML
     public ScrollPane logScrollPane;
     @FXML
-    public TableView<ServiceBusReceivedMessage> msgTableview;
+    public TableView<MessageRow> msgTableview;
     @FXML
     public Button btnpeek;
+    @FXML
+    public ToggleButton btnFollow;
+    @FXML
+    public TextField txtSearch;
+    @FXML
+    public TextField txtSeekTime;
 
     @FXML
     public TableView<Pair<String, String>> tableview;
@@ -74,9 +114,14 @@ public class MainUIController implements Initializable {
     public MenuItem mnuDlq;
     public MenuItem mnuSortByMessage;
     public MenuItem mnuSortByName;
-    public TableView<ServiceBusReceivedMessage> msgDlqTableview;
+    public TableView<MessageRow> msgDlqTableview;
     public TabPane messageViewTabPane;
     public MenuItem mnuSendToDlq;
+    public MenuItem mnuTransfer;
+    public MenuItem mnuFiltered;
+    public TabPane bottomTabPane;
+    public Tab jobsTab;
+    public TableView<Job> jobsTableview;
 
     @FXML
     private TreeView<DataTreeItem> treeview;
@@ -85,12 +130,17 @@ public class MainUIController implements Initializable {
     ApplicationContext context = ApplicationContext.getInstance();
     MainUITreeAndTableViewManager treeAndTableViewManager;
     MainUIMessageTableViewManager messageTableViewManager;
+    MainUIJobsViewManager jobsViewManager;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         context.setMainUIController(this);
         treeAndTableViewManager = new MainUITreeAndTableViewManager(treeview, tableview);
         messageTableViewManager = new MainUIMessageTableViewManager(msgTableview, msgDlqTableview);
+        messageTableViewManager.bindSearch(txtSearch);
+        btnFollow.selectedProperty().bindBidirectional(messageTableViewManager.followingProperty());
+        jobsViewManager = new MainUIJobsViewManager(jobsTableview, context.jobs());
+        jobsViewManager.initialize();
         FxClipboardCopyHandler.enableCopy(treeview);
         FxClipboardCopyHandler.enableCopy(tableview);
         btnRestoreAll.setVisible(false);
@@ -107,6 +157,8 @@ public class MainUIController implements Initializable {
                 btnRestoreAll.setManaged(dlqmessages);
                 btnRestoreSel.setVisible(dlqmessages);
                 btnRestoreSel.setManaged(dlqmessages);
+                btnDeadLetterSel.setVisible(!dlqmessages);
+                btnDeadLetterSel.setManaged(!dlqmessages);
 
             }
         });
@@ -118,10 +170,10 @@ public class MainUIController implements Initializable {
     }
 
 
+    private final FxBatcher<String> logLines = new FxBatcher<>(lines -> logNode.appendText(String.join("", lines)));
+
     public void log(String text) {
-        Platform.runLater(() -> {
-            logNode.appendText(text);
-        });
+        logLines.add(text);
     }
 
     public void handlePeek(ActionEvent actionEvent) {
@@ -131,7 +183,18 @@ public class MainUIController implements Initializable {
         Long count = isDlq() ? getEntityProperty("deadLetterMessageCount", treeview) :
                 getEntityProperty("activeMessageCount", treeview);
         if (count == 0) return;
-        messageTableViewManager.peekMessages(Constants.PEEK_SIZE);
+        messageTableViewManager.peekMessages();
+    }
+
+    /** Enter in the jump-to-time field: browse from the first message enqueued at or after that UTC time. */
+    public void handleSeek(ActionEvent actionEvent) {
+        if (getEntityName() == null) return;
+        try {
+            var time = parseTime(txtSeekTime.getText());
+            if (time != null) messageTableViewManager.seekTo(time);
+        } catch (DateTimeParseException e) {
+            showError("Invalid Time", null, "Times must look like 2024-01-31 13:45:00 (UTC)");
+        }
     }
 
     public void treeNodeSelected(ObservableValue<? extends TreeItem<DataTreeItem>> observable,
@@ -150,14 +213,22 @@ public class MainUIController implements Initializable {
 
 
     private void resetTreeContextMenu(TreeItem<DataTreeItem> newValue) {
-        Map<MenuItem, List<NodeType>> map = Map.of(
-                mnuSendMsg, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION),
-                mnuStatus, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION,NodeType.TOPIC),
-                mnuPurge, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION),
-                mnuDlq, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION),
-                mnuSendToDlq, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION),
-                mnuSortByName, List.of(NodeType.NONE, NodeType.TOPIC),
-                mnuSortByMessage, List.of(NodeType.NONE, NodeType.TOPIC)
+        Map<MenuItem, List<NodeType>> map = Map.ofEntries(
+                entry(mnuSendMsg, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuStatus, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION,NodeType.TOPIC)),
+                entry(mnuPurge, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuDlq, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuSendToDlq, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuTransfer, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuFiltered, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuStats, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuTriage, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuDuplicates, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuExport, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION)),
+                entry(mnuImport, List.of(NodeType.QUEUE, NodeType.TOPIC)),
+                entry(mnuRateLimit, List.of(NodeType.QUEUE, NodeType.SUBSCRIPTION, NodeType.TOPIC)),
+                entry(mnuSortByName, List.of(NodeType.NONE, NodeType.TOPIC)),
+                entry(mnuSortByMessage, List.of(NodeType.NONE, NodeType.TOPIC))
         );
         map.forEach((k, v) -> k.setVisible(v.contains(newValue.getValue().getType())));
 
@@ -191,6 +262,7 @@ public class MainUIController implements Initializable {
             loadTreeView();
 
         } else {
+            messageTableViewManager.discardSelected();
             treeNodeSelected(null, null, item);
         }
     }
@@ -202,19 +274,13 @@ public class MainUIController implements Initializable {
     public void handlePurge(ActionEvent actionEvent) {
         boolean isOk = showWarning("Warning: Mass message purge in progress! Only click ‘Purge’ if you dare", "Full Purge");
         if (!isOk) return;
-        MessageUtils.purgeAllMessages(getSelectedNode());
-        handleRefresh(actionEvent);
+        submitJob("Purge", (mgr, entity, meter) -> MessageUtils.purge(mgr, entity, false, meter));
     }
 
     public void handlePurgeDlq(ActionEvent actionEvent) {
         boolean isOk = showWarning("All messages are about to be banished to the Dead Letter Queue. Are you feeling brave enough?", "DLQ Purge");
         if (!isOk) return;
-        showProgress("Purging DLQ");
-        CompletableFuture.runAsync(() -> MessageUtils.purgeAllDlqMessages(getSelectedNode()))
-                .whenComplete((v, e) -> Platform.runLater(() -> {
-                    hideProgress();
-                    handleRefresh(actionEvent);
-                }));
+        submitJob("Purge DLQ", (mgr, entity, meter) -> MessageUtils.purge(mgr, entity, true, meter));
     }
 
     public void handleSortByName(ActionEvent actionEvent) {
@@ -236,14 +302,458 @@ public class MainUIController implements Initializable {
     }
 
     public void handleSendToDlq(ActionEvent actionEvent) {
-        boolean isOk = showWarning("Oops! All messages are heading to the Dead Letter Queue. Shall we let them go?", null);
-        if (!isOk) return;
-        showProgress("Moving selected messages to DLQ");
-        CompletableFuture.runAsync(() -> MessageUtils.moveAllMessagesToDlq(getSelectedNode()))
-                .whenComplete((v, e) -> Platform.runLater(() -> {
-                    hideProgress();
-                    handleRefresh(actionEvent);
-                }));
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Warning");
+        alert.setHeaderText("Oops! All messages are heading to the Dead Letter Queue. Shall we let them go?");
+        alert.setGraphic(null);
+        TextField txtReason = new TextField(MessageUtils.deadLetterOptions.getDeadLetterReason());
+        TextField txtDescription = new TextField(MessageUtils.deadLetterOptions.getDeadLetterErrorDescription());
+        txtDescription.setPrefWidth(320);
+        Spinner<Integer> spnReceivers = new Spinner<>(1, 32, Constants.DEAD_LETTER_RECEIVERS);
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(8);
+        grid.setPadding(new Insets(10, 0, 0, 0));
+        grid.addRow(0, new Label("Reason:"), txtReason);
+        grid.addRow(1, new Label("Description:"), txtDescription);
+        grid.addRow(2, new Label("Receivers:"), spnReceivers);
+        alert.getDialogPane().setContent(grid);
+        alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+
+        var result = alert.showAndWait();
+        if (result.isEmpty() || result.get() != ButtonType.OK) return;
+        var options = new DeadLetterOptions()
+                .setDeadLetterReason(txtReason.getText())
+                .setDeadLetterErrorDescription(txtDescription.getText());
+        int receivers = spnReceivers.getValue();
+        submitJob("Send all to DLQ", (mgr, entity, meter) -> MessageUtils.moveAllMessagesToDlq(mgr, entity, receivers, options, meter));
+    }
+
+    /** Sets the send rate cap of the selected entity for this session; 0 falls back to RATE_LIMIT_PER_ENTITY. */
+    public void handleRateLimit(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var namespace = context.currentNamespace();
+        var entity = MessageUtils.parseNode(item);
+
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Rate Limit");
+        alert.setHeaderText("Messages per second sent to " + entity.path() + " by restores, moves and imports");
+        alert.setGraphic(null);
+        Spinner<Integer> spnRate = new Spinner<>(0, 100000, RateGovernor.entityLimit(namespace, entity), 100);
+        spnRate.setEditable(true);
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(8);
+        grid.setPadding(new Insets(10, 0, 0, 0));
+        grid.addRow(0, new Label("Per second:"), spnRate);
+        grid.addRow(1, new Label(""), new Label(Constants.RATE_LIMIT_PER_ENTITY > 0
+                ? "0 uses the default of " + Constants.RATE_LIMIT_PER_ENTITY : "0 = no cap"));
+        alert.getDialogPane().setContent(grid);
+        alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+
+        var result = alert.showAndWait();
+        if (result.isEmpty() || result.get() != ButtonType.OK) return;
+        RateGovernor.setEntityLimit(namespace, entity, spnRate.getValue());
+        LogUtils.log("Rate limit of %s set to %d msg/s", entity.path(), RateGovernor.entityLimit(namespace, entity));
+    }
+
+    private interface EntityWork {
+        void run(ServiceBusManager mgr, MessageUtils.Entity entity, ProgressMeter meter);
+    }
+
+    /**
+     * Starts {@code work} as a background job on the selected entity, bound to the current namespace.
+     * The message view is refreshed when the job ends if that entity is still selected.
+     */
+    private void submitJob(String name, EntityWork work) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var mgr = context.currentManager();
+        var entity = MessageUtils.parseNode(item);
+        var job = startJob(String.format("%s %s", name, entity.path()), entity.path(), meter -> work.run(mgr, entity, meter));
+        if (job == null) return;
+        job.completion().thenRun(() -> Platform.runLater(() -> {
+            if (getSelectedNode() == item) handleRefresh(null);
+        }));
+    }
+
+    /** Starts a job that changes {@code entity} of the current namespace. */
+    private Job startJob(String name, String entity, Consumer<ProgressMeter> work) {
+        return startJob(name, List.of(Lock.exclusive(context.currentNamespace(), entity)), work);
+    }
+
+    /** Starts a read-only scan of {@code entity}; scans of one entity may run together. */
+    private Job startScan(String name, String entity, Consumer<ProgressMeter> work) {
+        return startJob(name, List.of(Lock.shared(context.currentNamespace(), entity)), work);
+    }
+
+    private Job startJob(String name, List<Lock> locks, Consumer<ProgressMeter> work) {
+        try {
+            var job = context.jobs().submit(name, context.currentNamespace(), locks, work);
+            bottomTabPane.getSelectionModel().select(jobsTab);
+            return job;
+        } catch (IllegalStateException e) {
+            showError("Job Not Started", null, e.getMessage());
+            return null;
+        }
+    }
+
+    public void handleCancelJob(ActionEvent actionEvent) {
+        jobsViewManager.cancelSelected();
+    }
+
+    public void handleClearJobs(ActionEvent actionEvent) {
+        jobsViewManager.clearFinished();
+    }
+
+    public void handleTransfer(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var source = MessageUtils.parseNode(item);
+
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Move / Copy Messages");
+        alert.setHeaderText("Transfer messages from " + item.getValue().getName());
+        alert.setGraphic(null);
+        ComboBox<String> cmbSubQueue = new ComboBox<>();
+        cmbSubQueue.getItems().addAll("Active", "Dead-letter");
+        cmbSubQueue.getSelectionModel().select(isDlq() ? 1 : 0);
+        ComboBox<String> cmbNamespace = new ComboBox<>();
+        cmbNamespace.getItems().addAll(new TreeSet<>(context.managers().keySet()));
+        ComboBox<MessageMover.Endpoint> cmbDestination = new ComboBox<>();
+        cmbDestination.setPrefWidth(320);
+        cmbNamespace.valueProperty().addListener((obs, oldNs, ns) -> loadDestinations(ns, cmbDestination));
+        cmbNamespace.getSelectionModel().select(context.currentNamespace());
+        ComboBox<MessageMover.Mode> cmbMode = new ComboBox<>();
+        cmbMode.getItems().addAll(MessageMover.Mode.values());
+        cmbMode.getSelectionModel().select(MessageMover.Mode.COPY);
+        Spinner<Integer> spnParallelism = new Spinner<>(1, 32, 4);
+        Spinner<Integer> spnBatchSize = new Spinner<>(1, 500, 100);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(8);
+        grid.setPadding(new Insets(10, 0, 0, 0));
+        grid.addRow(0, new Label("Read from:"), cmbSubQueue);
+        grid.addRow(1, new Label("Namespace:"), cmbNamespace);
+        grid.addRow(2, new Label("Destination:"), cmbDestination);
+        grid.addRow(3, new Label("Mode:"), cmbMode);
+        grid.addRow(4, new Label("Parallelism:"), spnParallelism);
+        grid.addRow(5, new Label("Batch size:"), spnBatchSize);
+        alert.getDialogPane().setContent(grid);
+        alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+
+        var result = alert.showAndWait();
+        if (result.isEmpty() || result.get() != ButtonType.OK || cmbDestination.getValue() == null) return;
+        var destination = cmbDestination.getValue();
+        var from = MessageMover.Endpoint.of(context.currentNamespace(), source, cmbSubQueue.getSelectionModel().getSelectedIndex() == 1);
+        var options = new MessageMover.Options(cmbMode.getValue(), spnParallelism.getValue(), spnBatchSize.getValue());
+        if (options.mode() == MessageMover.Mode.MOVE
+                && !showWarning(String.format("Messages will be removed from %s once they reach %s. Continue?", from, destination), "Move Messages")) {
+            return;
+        }
+        var name = String.format("%s %s to %s", options.mode(), source.path(), destination.name());
+        var locks = List.of(Lock.exclusive(from.namespace(), from.path()), Lock.exclusive(destination.namespace(), destination.path()));
+        startJob(name, locks, meter -> MessageUtils.transferMessages(from, destination, options, meter));
+    }
+
+    public void handleFilteredOperation(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Filtered Purge / Dead-letter");
+        alert.setHeaderText("Only messages matching every filled-in field are affected");
+        alert.setGraphic(null);
+        ComboBox<String> cmbSubQueue = new ComboBox<>();
+        cmbSubQueue.getItems().addAll("Active", "Dead-letter");
+        ComboBox<SelectiveOperation.Action> cmbAction = new ComboBox<>();
+        cmbSubQueue.valueProperty().addListener((obs, o, v) -> {
+            // dead-lettering is only possible from the active sub-queue
+            cmbAction.getItems().setAll(SelectiveOperation.Action.DELETE);
+            if ("Active".equals(v)) cmbAction.getItems().add(SelectiveOperation.Action.DEAD_LETTER);
+            cmbAction.getSelectionModel().selectFirst();
+        });
+        cmbSubQueue.getSelectionModel().select(isDlq() ? 1 : 0);
+        TextField txtSubject = new TextField();
+        TextField txtPropName = new TextField();
+        TextField txtPropValue = new TextField();
+        TextField txtFrom = new TextField();
+        TextField txtTo = new TextField();
+        txtFrom.setPromptText("yyyy-MM-dd HH:mm:ss UTC");
+        txtTo.setPromptText("yyyy-MM-dd HH:mm:ss UTC");
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(8);
+        grid.setPadding(new Insets(10, 0, 0, 0));
+        grid.addRow(0, new Label("Read from:"), cmbSubQueue);
+        grid.addRow(1, new Label("Action:"), cmbAction);
+        grid.addRow(2, new Label("Subject:"), txtSubject);
+        grid.addRow(3, new Label("Property name:"), txtPropName);
+        grid.addRow(4, new Label("Property value:"), txtPropValue);
+        grid.addRow(5, new Label("Enqueued from:"), txtFrom);
+        grid.addRow(6, new Label("Enqueued before:"), txtTo);
+        alert.getDialogPane().setContent(grid);
+        alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+
+        var result = alert.showAndWait();
+        if (result.isEmpty() || result.get() != ButtonType.OK) return;
+        MessageFilter filter;
+        try {
+            filter = new MessageFilter(blankToNull(txtSubject.getText()), blankToNull(txtPropName.getText()),
+                    blankToNull(txtPropValue.getText()), parseTime(txtFrom.getText()), parseTime(txtTo.getText()));
+        } catch (DateTimeParseException e) {
+            showError("Invalid Filter", null, "Times must look like 2024-01-31 13:45:00 (UTC)");
+            return;
+        }
+        if (filter.isEmpty()) {
+            showError("Invalid Filter", null, "Fill in at least one field; use Purge to remove everything.");
+            return;
+        }
+        var action = cmbAction.getValue();
+        boolean dlq = cmbSubQueue.getSelectionModel().getSelectedIndex() == 1;
+        if (!showWarning(String.format("Every message matching %s will be %s. Continue?", filter, action.getLabel().toLowerCase()), "Filtered " + action.getTitle())) {
+            return;
+        }
+        submitJob("Filtered " + action.getLabel().toLowerCase(), (mgr, entity, meter) ->
+                MessageUtils.applyToMatching(mgr, entity, dlq, action, filter, meter));
+    }
+
+    /** Scans the whole selected entity (or its DLQ) in the background; the report fills in while the scan runs. */
+    public void handleStats(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var mgr = context.currentManager();
+        var entity = MessageUtils.parseNode(item);
+        boolean dlq = isDlq();
+
+        TextArea report = new TextArea("Starting scan...");
+        report.setEditable(false);
+        report.setStyle("-fx-font-family: 'Monospaced';");
+        report.setPrefSize(720, 480);
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Statistics");
+        alert.setHeaderText(String.format("%s%s", entity.path(), dlq ? " (DLQ)" : ""));
+        alert.setGraphic(null);
+        alert.getDialogPane().setContent(report);
+        alert.setResizable(true);
+        alert.initModality(Modality.NONE);
+
+        var name = String.format("Statistics %s%s", entity.path(), dlq ? " DLQ" : "");
+        var job = startScan(name, entity.path(), meter -> MessageUtils.scanStats(mgr, entity, dlq,
+                text -> Platform.runLater(() -> report.setText(text)), meter));
+        if (job == null) return;
+        alert.show();
+    }
+
+    /** Groups the selected entity's DLQ by dead-letter reason, description and source; the table fills in while the job runs. */
+    public void handleTriage(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var mgr = context.currentManager();
+        var entity = MessageUtils.parseNode(item);
+
+        TableView<DlqTriage.Group> groups = new TableView<>();
+        groups.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_SUBSEQUENT_COLUMNS);
+        groups.getColumns().addAll(
+                createColumn("Count", DlqTriage.Group::count, 70),
+                createColumn("Reason", DlqTriage.Group::reason, 160),
+                createColumn("Error Description", DlqTriage.Group::description, 280),
+                createColumn("Source", DlqTriage.Group::source, 120),
+                createColumn("First Enqueued (UTC)", g -> formatTime(g.firstSeen()), 130),
+                createColumn("Last Enqueued (UTC)", g -> formatTime(g.lastSeen()), 130),
+                createColumn("Sample Sequences", g -> Arrays.stream(g.samples()).mapToObj(Long::toString).collect(Collectors.joining(", ")), 160));
+        groups.setPrefSize(1000, 480);
+        FxClipboardCopyHandler.enableCopy(groups);
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("DLQ Triage");
+        alert.setHeaderText(entity.path() + ": scanning dead-letter queue...");
+        alert.setGraphic(null);
+        alert.getDialogPane().setContent(groups);
+        alert.setResizable(true);
+        alert.initModality(Modality.NONE);
+
+        var job = startScan("DLQ triage " + entity.path(), entity.path(), meter -> MessageUtils.triageDlq(mgr, entity,
+                update -> Platform.runLater(() -> {
+                    groups.getItems().setAll(update);
+                    alert.setHeaderText(String.format("%s: %,d dead-lettered messages in %d groups%s", entity.path(),
+                            update.stream().mapToLong(DlqTriage.Group::count).sum(), update.size(),
+                            meter.isCancelled() ? " (cancelled)" : ""));
+                }), meter));
+        if (job == null) return;
+        alert.show();
+    }
+
+    /**
+     * Scans the selected entity (or its DLQ) for messages with identical bodies. Once the scan is done the duplicates,
+     * all but the earliest message of each cluster, can be deleted through the selective delete path.
+     */
+    public void handleDuplicates(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var mgr = context.currentManager();
+        var entity = MessageUtils.parseNode(item);
+        boolean dlq = isDlq();
+
+        TableView<DuplicateScan.Cluster> clusters = new TableView<>();
+        clusters.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_SUBSEQUENT_COLUMNS);
+        clusters.getColumns().addAll(
+                createColumn("Count", DuplicateScan.Cluster::count, 70),
+                createColumn("Body Size", DuplicateScan.Cluster::bodySize, 70),
+                createColumn("First Sequence", DuplicateScan.Cluster::firstSequence, 100),
+                createColumn("Duplicate Sequences", c -> sequenceList(c.duplicates(), c.count() - 1), 220),
+                createColumn("Body", DuplicateScan.Cluster::preview, 400));
+        clusters.setPrefSize(1000, 480);
+        FxClipboardCopyHandler.enableCopy(clusters);
+        var deleteButton = new ButtonType("Delete Duplicates", ButtonBar.ButtonData.OK_DONE);
+        Alert alert = new Alert(Alert.AlertType.NONE, "", deleteButton, ButtonType.CLOSE);
+        alert.setTitle("Duplicates");
+        alert.setHeaderText(String.format("%s%s: scanning...", entity.path(), dlq ? " (DLQ)" : ""));
+        alert.getDialogPane().setContent(clusters);
+        alert.getDialogPane().lookupButton(deleteButton).setDisable(true);
+        alert.setResizable(true);
+        alert.initModality(Modality.NONE);
+
+        var result = new AtomicReference<List<DuplicateScan.Cluster>>(List.of());
+        Consumer<List<DuplicateScan.Cluster>> onUpdate = update -> Platform.runLater(() -> {
+            clusters.getItems().setAll(update);
+            alert.setHeaderText(String.format("%s%s: %,d duplicate messages in %d clusters", entity.path(), dlq ? " (DLQ)" : "",
+                    update.stream().mapToLong(c -> c.count() - 1).sum(), update.size()));
+        });
+        var job = startScan(String.format("Find duplicates %s%s", entity.path(), dlq ? " DLQ" : ""), entity.path(),
+                meter -> result.set(MessageUtils.findDuplicates(mgr, entity, dlq, onUpdate, meter)));
+        if (job == null) return;
+        job.completion().thenRun(() -> Platform.runLater(() ->
+                alert.getDialogPane().lookupButton(deleteButton).setDisable(result.get().isEmpty())));
+        alert.resultProperty().addListener((obs, old, button) -> {
+            if (button != deleteButton) return;
+            var targets = DuplicateScan.duplicatesOf(result.get());
+            if (!showWarning(String.format("%d duplicate messages will be deleted from %s, keeping the earliest of each. Continue?",
+                    targets.size(), entity.path()), "Delete Duplicates")) return;
+            var deleted = new AtomicReference<LongHashSet>(new LongHashSet());
+            var delete = startJob(String.format("Delete %d duplicates %s", targets.size(), entity.path()), entity.path(),
+                    meter -> deleted.set(MessageUtils.applyToSequences(mgr, entity, dlq, SelectiveOperation.Action.DELETE, targets, meter)));
+            if (delete == null) return;
+            delete.completion().thenRun(() -> Platform.runLater(() -> {
+                int left = targets.size() - deleted.get().size();
+                alert.setHeaderText(String.format("%s%s: deleted %,d of %,d duplicates%s", entity.path(), dlq ? " (DLQ)" : "",
+                        deleted.get().size(), targets.size(), left > 0 ? String.format(", %,d left in place (see log)", left) : ""));
+                if (left > 0) {
+                    alert.getDialogPane().lookupButton(deleteButton).setDisable(true);
+                    alert.show();
+                }
+                if (getSelectedNode() == item) handleRefresh(null);
+            }));
+        });
+        alert.show();
+    }
+
+    /** Exports the whole selected entity (or its DLQ) into a single compressed, indexed archive file. */
+    public void handleExport(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var mgr = context.currentManager();
+        var entity = MessageUtils.parseNode(item);
+        boolean dlq = isDlq();
+        var initialName = String.format("%s%s.ndjson.gz", entity.path().replaceAll("[\\\\/:*?\"<>|]", "_"), dlq ? "-dlq" : "");
+        File file = archiveSaveChooser("Export Archive", treeview.getScene().getWindow(), initialName);
+        if (file == null) return;
+        startScan(String.format("Export %s%s", entity.path(), dlq ? " DLQ" : ""), entity.path(),
+                meter -> MessageUtils.exportArchive(mgr, entity, dlq, file, meter));
+    }
+
+    /**
+     * Sends a folder of saved message files, or an exported archive, to the selected queue or topic.
+     * A rerun of an interrupted import of the same source continues where it stopped.
+     */
+    public void handleImport(ActionEvent actionEvent) {
+        var item = getSelectedNode();
+        if (item == null) return;
+        var entity = MessageUtils.parseNode(item);
+        var destination = MessageMover.Endpoint.of(context.currentNamespace(), entity, false);
+
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Import Messages");
+        alert.setHeaderText("Send saved or archived messages to " + destination);
+        alert.setGraphic(null);
+        TextField txtSource = new TextField();
+        txtSource.setPrefWidth(360);
+        txtSource.setPromptText("folder of *.json files or *.ndjson.gz archive");
+        Button btnFolder = new Button("Folder...");
+        btnFolder.setOnAction(e -> {
+            File dir = fileChooser("Select Folder to Import", e);
+            if (dir != null) txtSource.setText(dir.getAbsolutePath());
+        });
+        Button btnArchive = new Button("Archive...");
+        btnArchive.setOnAction(e -> {
+            File file = archiveOpenChooser("Select Archive to Import", btnArchive.getScene().getWindow());
+            if (file != null) txtSource.setText(file.getAbsolutePath());
+        });
+        HBox sourceBox = new HBox(6, txtSource, btnFolder, btnArchive);
+        HBox.setHgrow(txtSource, Priority.ALWAYS);
+        Spinner<Integer> spnRate = new Spinner<>(0, 100000, 0, 100);
+        spnRate.setEditable(true);
+        CheckBox chkDryRun = new CheckBox("Dry run (only count what would be sent)");
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(8);
+        grid.setPadding(new Insets(10, 0, 0, 0));
+        grid.addRow(0, new Label("Source:"), sourceBox);
+        grid.addRow(1, new Label("Max msg/s (0 = no cap):"), spnRate);
+        grid.addRow(2, new Label(""), chkDryRun);
+        alert.getDialogPane().setContent(grid);
+        alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+
+        var result = alert.showAndWait();
+        if (result.isEmpty() || result.get() != ButtonType.OK || txtSource.getText().isBlank()) return;
+        var source = new File(txtSource.getText().trim());
+        if (!source.exists()) {
+            showError("Import Messages", null, source + " does not exist");
+            return;
+        }
+        var options = new MessageImport.Options(chkDryRun.isSelected(), spnRate.getValue());
+        var name = String.format("%s %s to %s", options.dryRun() ? "Count" : "Import", source.getName(), entity.path());
+        startJob(name, List.of(Lock.exclusive(destination.namespace(), destination.path())),
+                meter -> MessageUtils.importMessages(source, destination, options, meter));
+    }
+
+    private static String sequenceList(long[] sequences, long total) {
+        var text = Arrays.stream(sequences).limit(20).mapToObj(Long::toString).collect(Collectors.joining(", "));
+        return total > 20 ? text + String.format(", ... (%,d in all)", total) : text;
+    }
+
+    /** Times are shown and entered in UTC, like the Enqueued Time column of the message table. */
+    private static String formatTime(OffsetDateTime time) {
+        return time == null ? "" : time.atZoneSameInstant(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    }
+
+    private static String blankToNull(String text) {
+        return text == null || text.isBlank() ? null : text.trim();
+    }
+
+    private static OffsetDateTime parseTime(String text) {
+        if (text == null || text.isBlank()) return null;
+        return LocalDateTime.parse(text.trim(), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+                .atOffset(ZoneOffset.UTC);
+    }
+
+    private void loadDestinations(String namespace, ComboBox<MessageMover.Endpoint> comboBox) {
+        comboBox.getItems().clear();
+        var mgr = context.managers().get(namespace);
+        if (mgr == null) return;
+        CompletableFuture.supplyAsync(() -> {
+            var adminClient = mgr.getAdminClient();
+            List<MessageMover.Endpoint> endpoints = new ArrayList<>();
+            adminClient.listQueues().forEach(q -> endpoints.add(new MessageMover.Endpoint(namespace, NodeType.QUEUE, q.getName(), "", false)));
+            adminClient.listTopics().forEach(t -> endpoints.add(new MessageMover.Endpoint(namespace, NodeType.TOPIC, t.getName(), "", false)));
+            return endpoints;
+        }).whenComplete((endpoints, e) -> Platform.runLater(() -> {
+            if (e != null) LogUtils.log("Error listing entities in %s: %s", namespace, e.getMessage());
+            else comboBox.getItems().setAll(endpoints);
+        }));
     }
 
     public String getEntityName() {
@@ -283,58 +793,85 @@ public class MainUIController implements Initializable {
     }
 
     public void handleRestoreFromDlq(ActionEvent actionEvent) {
-        showProgress("Restoring selected messages to queue");
-        var entityName = getEntityName();
-        if (entityName == null || !isDlq()) return;
-        ObservableList<ServiceBusReceivedMessage> selectedItems = msgDlqTableview.getSelectionModel().getSelectedItems();
-        var list = new ArrayList<>(selectedItems);
-        CompletableFuture.supplyAsync(() ->
-                MessageUtils.moveMessagesAsyncToQueue(getSelectedNode(), list)
-        ).whenComplete((result, ex) ->
-                Platform.runLater(() -> {
-                    if (ex != null) {
-                        LogUtils.log("Error moving messages: %s", ex.getMessage());
-                        showError("Move Failed", null, ex.getMessage());
-                    } else {
-                        result.forEach(msgDlqTableview.getItems()::remove);
-                        hideProgress();
-                        if (result.isEmpty()) {
-                            showInfo("Move Failed", null, "Looks like the message is locked. Try refreshing and moving it again.");
-                        }
-                    }
-                })
-        );
+        var item = getSelectedNode();
+        if (getEntityName() == null || !isDlq()) return;
+        var targets = sequenceNumbers(msgDlqTableview.getSelectionModel().getSelectedItems());
+        if (targets.isEmpty()) return;
+        var mgr = context.currentManager();
+        var entity = MessageUtils.parseNode(item);
+        var moved = new AtomicReference<>(new LongHashSet());
+        var job = startJob(String.format("Restore %d selected %s", targets.size(), entity.path()), entity.path(),
+                meter -> moved.set(MessageUtils.moveMessagesAsyncToQueue(mgr, entity, targets, meter)));
+        if (job == null) return;
+        job.completion().thenRun(() -> Platform.runLater(() -> {
+            if (getSelectedNode() == item) messageTableViewManager.removeRows(msgDlqTableview, moved.get());
+            if (job.getState() == Job.State.COMPLETED && moved.get().isEmpty()) {
+                showInfo("Move Failed", null, "Looks like the message is locked. Try refreshing and moving it again.");
+            }
+        }));
+    }
+
+    public void handleDeleteSelected(ActionEvent actionEvent) {
+        applyToSelected(SelectiveOperation.Action.DELETE, "%d selected messages will be deleted permanently. Continue?");
+    }
+
+    public void handleDeadLetterSelected(ActionEvent actionEvent) {
+        applyToSelected(SelectiveOperation.Action.DEAD_LETTER, "%d selected messages will be moved to the Dead Letter Queue. Continue?");
+    }
+
+    private void applyToSelected(SelectiveOperation.Action action, String warning) {
+        var item = getSelectedNode();
+        if (getEntityName() == null) return;
+        boolean dlq = isDlq();
+        var tableView = dlq ? msgDlqTableview : msgTableview;
+        var targets = sequenceNumbers(tableView.getSelectionModel().getSelectedItems());
+        if (targets.isEmpty()) return;
+        var text = String.format(warning, targets.size());
+        // settling needs a lock, so everything received before the selection is locked and abandoned again
+        if (!dlq) text += "\nMessages ahead of the selection are locked while it is found and get one more delivery count.";
+        boolean isOk = showWarning(text, action.getTitle() + " Selected");
+        if (!isOk) return;
+        var mgr = context.currentManager();
+        var entity = MessageUtils.parseNode(item);
+        var handled = new AtomicReference<>(new LongHashSet());
+        var job = startJob(String.format("%s %d selected %s%s", action.getTitle(), targets.size(), entity.path(), dlq ? " DLQ" : ""),
+                entity.path(), meter -> handled.set(MessageUtils.applyToSequences(mgr, entity, dlq, action, targets, meter)));
+        if (job == null) return;
+        job.completion().thenRun(() -> Platform.runLater(() -> {
+            if (getSelectedNode() == item) messageTableViewManager.removeRows(tableView, handled.get());
+        }));
+    }
+
+    private static LongHashSet sequenceNumbers(List<MessageRow> rows) {
+        var set = new LongHashSet(rows.size());
+        rows.forEach(row -> set.add(row.sequenceNumber()));
+        return set;
     }
 
     public void handleRestoreAll(ActionEvent actionEvent) {
-        showProgress("Restoring all messages to queue");
         var entityName = getEntityName();
         if (entityName == null || !isDlq()) return;
-        CompletableFuture.runAsync(() -> {
-                    MessageUtils.moveAllMessagesToQueue(getSelectedNode());
-                })
-                .whenComplete((v, e) -> Platform.runLater(() -> {
-                    hideProgress();
-                    msgDlqTableview.getItems().clear();
-                }));
-
+        submitJob("Restore DLQ", (mgr, entity, meter) ->
+                MessageUtils.moveAllMessagesToQueue(mgr, entity, RestorePipeline.Options.defaults(), meter));
     }
 
     private final AtomicInteger progressCount = new AtomicInteger(0);
 
     public void showProgress(String message) {
-        int count = progressCount.incrementAndGet();
-        topSplitPane.setDisable(true);
+        progressCount.incrementAndGet();
         progressBox.setVisible(true);
         progressBox.setManaged(true);
         progressLabel.setText(message);
     }
 
+    public void updateProgress(String message) {
+        Platform.runLater(() -> progressLabel.setText(message));
+    }
+
     public void hideProgress() {
         int count = progressCount.decrementAndGet();
         if (count <= 0) {
             progressCount.set(0);
-            topSplitPane.setDisable(false);
             progressBox.setVisible(false);
             progressBox.setManaged(false);
         }
@@ -345,19 +882,15 @@ public class MainUIController implements Initializable {
         if (selectedDir == null) return;
         var sw = StopWatch.createStarted();
         var tableView = isDlq() ? msgDlqTableview : msgTableview;
-        ObservableList<ServiceBusReceivedMessage> selectedItems = tableView.getSelectionModel().getSelectedItems();
-        var list = new ArrayList<>(selectedItems);
-        btnSaveMsg.setDisable(true);
-        Thread.ofVirtual().start(() -> {
+        var list = new ArrayList<>(tableView.getSelectionModel().getSelectedItems());
+        startJob(String.format("Save %d messages", list.size()), List.of(), meter -> {
             try {
-                MessageUtils.saveMessages(selectedDir, list);
-                LogUtils.log("Messages(%s) saved to %s in %s", list.size(), selectedDir.getAbsolutePath(), fd(sw));
+                MessageUtils.saveRows(selectedDir, list, meter);
+                LogUtils.log("Messages(%s) saved to %s in %s", meter.count(), selectedDir.getAbsolutePath(), fd(sw));
             } catch (Exception e) {
                 LogUtils.log("Error saving messages: %s", e.getMessage());
+                throw new IllegalStateException(e.getMessage(), e);
             }
-            Platform.runLater(() -> {
-                btnSaveMsg.setDisable(false);
-            });
         });
     }
 
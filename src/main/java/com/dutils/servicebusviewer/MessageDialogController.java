@@ -5,6 +5,7 @@ import com.dutils.servicebusviewer.codearea.JsonEditor;
 import com.dutils.servicebusviewer.codearea.XMLEditor;
 import com.dutils.servicebusviewer.config.ApplicationContext;
 import com.dutils.servicebusviewer.model.DataTreeItem;
+import com.dutils.servicebusviewer.model.MessageRow;
 import com.dutils.servicebusviewer.model.NodeType;
 import com.dutils.servicebusviewer.model.PropsTreeTableItem;
 import com.dutils.servicebusviewer.model.ServiceBusMessageData;
@@ -43,7 +44,6 @@ import java.util.stream.Collectors;
 
 import static com.dutils.servicebusviewer.utils.DialogUtils.*;
 import static com.dutils.servicebusviewer.utils.LogUtils.log;
-import static com.dutils.servicebusviewer.utils.MessageUtils.extractBody;
 
 public class MessageDialogController {
 
@@ -76,6 +76,9 @@ public class MessageDialogController {
     @FXML
     SplitPane splitPane;
     ServiceBusReceivedMessage serviceBusReceivedMessage;
+    private MessageRow messageRow;
+    // the body as shown, so an unedited resend keeps its original bytes
+    private BodyCache.Body shownBody;
     @FXML
     private DialogPane dialogPane;
     private String entityName;
@@ -153,7 +156,7 @@ public class MessageDialogController {
         tableSelect(tableView, 1);
     }
 
-    void tableSelect(TableView<ServiceBusReceivedMessage> tableView, int step) {
+    void tableSelect(TableView<MessageRow> tableView, int step) {
         var model = tableView.getSelectionModel();
         var items = tableView.getItems();
         int size = items.size();
@@ -172,44 +175,38 @@ public class MessageDialogController {
         }
 
         if (atLast && step > 0) {
-            syncPeekMessages();
+            var mgr = ApplicationContext.getInstance().getMainUIController().messageTableViewManager;
+            mgr.peekMessages().whenComplete((v, e) -> Platform.runLater(() -> moveSelection(tableView, currentIndex, step, size, atLast)));
+        } else {
+            Platform.runLater(() -> moveSelection(tableView, currentIndex, step, size, atLast));
         }
+    }
 
-        Platform.runLater(() -> {
-            var updatedItems = tableView.getItems();
-            int newSize = updatedItems.size();
-
-            int nextIndex = currentIndex + step;
-            if (nextIndex < 0) nextIndex = 0;
-            else if (nextIndex >= newSize) nextIndex = newSize - 1;
-
-            boolean reachedEnd = (nextIndex == newSize - 1 && step > 0 && atLast && newSize == size);
-            if (reachedEnd) {
-                showInfo("Message", null, "You’re already at the last message — nothing more to show.");
-                endProcess("Showing Message in Row: " + (nextIndex + 1));
-                return;
-            }
+    private void moveSelection(TableView<MessageRow> tableView, int currentIndex, int step, int size, boolean atLast) {
+        var model = tableView.getSelectionModel();
+        var updatedItems = tableView.getItems();
+        int newSize = updatedItems.size();
 
-            try {
-                model.clearSelection();
-                model.select(nextIndex);
-                tableView.scrollTo(nextIndex);
-                init(model.getSelectedItem());
-            } catch (Exception e) {
-                LogUtils.log("Exception Occurred: %s", e.getMessage());
-            } finally {
-                endProcess("Showing Message in Row: " + (nextIndex + 1));
-            }
-        });
-    }
+        int nextIndex = currentIndex + step;
+        if (nextIndex < 0) nextIndex = 0;
+        else if (nextIndex >= newSize) nextIndex = newSize - 1;
+
+        boolean reachedEnd = (nextIndex == newSize - 1 && step > 0 && atLast && newSize == size);
+        if (reachedEnd) {
+            showInfo("Message", null, "You’re already at the last message — nothing more to show.");
+            endProcess("Showing Message in Row: " + (nextIndex + 1));
+            return;
+        }
 
-    void syncPeekMessages() {
-        var mgr = ApplicationContext.getInstance().getMainUIController().messageTableViewManager;
-        mgr.peekMessages(Constants.PEEK_SIZE);
         try {
-            mgr.peekFuture.get();
+            model.clearSelection();
+            model.select(nextIndex);
+            tableView.scrollTo(nextIndex);
+            init(model.getSelectedItem());
         } catch (Exception e) {
-            log("Exception Occurred: %s", e.getMessage());
+            LogUtils.log("Exception Occurred: %s", e.getMessage());
+        } finally {
+            endProcess("Showing Message in Row: " + (nextIndex + 1));
         }
     }
 
@@ -218,7 +215,9 @@ public class MessageDialogController {
         if (selectedDir == null) return;
         startProcees("Saving...");
         try {
-            var fileNames = MessageUtils.saveMessages(selectedDir, List.of(this.serviceBusReceivedMessage));
+            var fileNames = serviceBusReceivedMessage != null
+                    ? MessageUtils.saveMessages(selectedDir, List.of(serviceBusReceivedMessage))
+                    : MessageUtils.saveRows(selectedDir, List.of(messageRow), new ProgressMeter());
             endProcess("Saved Successfully. File:" + fileNames);
         } catch (IOException ex) {
             LogUtils.log("Exception Occurred: %s", ex.getMessage());
@@ -244,10 +243,12 @@ public class MessageDialogController {
         }
         var jsonReadResult = JsonFileUtil.readFromFile(selectedFile, ServiceBusMessageData.class);
         if (jsonReadResult.object() == null) {
+            shownBody = null;
             messageEditor.replaceText(jsonReadResult.rawData());
         } else {
             ServiceBusMessageData messageData = jsonReadResult.object();
-            messageEditor.replaceText(messageData.getBody());
+            shownBody = BodyCache.get(null, 0, null, messageData.getBody(), messageData.getRawBody());
+            messageEditor.replaceText(shownBody.text());
             propsTreeTableView.setVisible(true);
             propsTreeTableView.setManaged(true);
             populateTree(MapperUtils.toMap(messageData));
@@ -255,20 +256,57 @@ public class MessageDialogController {
         }
     }
 
-    public void init(ServiceBusReceivedMessage serviceBusReceivedMessage) {
-        try {
-            innerSplitPane.setDividerPositions(0.7);
-            propsTreeTableView.setVisible(true);
-            propsTreeTableView.setManaged(true);
-            this.serviceBusReceivedMessage = serviceBusReceivedMessage;
-            String body = extractBody(serviceBusReceivedMessage);
-            contentType.getSelectionModel().select(Utils.detectType(body));
-            messageEditor.replaceText(body);
-            populateTree(MapperUtils.toMap(serviceBusReceivedMessage));
-            customPropsTableDataSetup(serviceBusReceivedMessage.getApplicationProperties());
-        } catch (IOException e) {
-            log("Exception Occured: %s", e.getMessage());
+    /**
+     * Opens a table row: the message is peeked again by sequence number so the dialog shows its current state.
+     * If it has been settled since, the copy spilled at peek time is shown instead.
+     */
+    public void init(MessageRow row) {
+        this.messageRow = row;
+        startProcees("Loading Message...");
+        row.rehydrate()
+                .exceptionally(e -> {
+                    log("Unable to peek message %d again: %s", row.sequenceNumber(), e.getMessage());
+                    return null;
+                })
+                .thenAccept(msg -> {
+                    var data = msg == null ? row.data() : null;
+                    Platform.runLater(() -> {
+                        if (msg != null) init(msg);
+                        else initDetached(row, data);
+                        endProcess("Showing Message: " + row.sequenceNumber());
+                    });
+                });
+    }
+
+    private void initDetached(MessageRow row, ServiceBusMessageData data) {
+        this.serviceBusReceivedMessage = null;
+        if (data == null) {
+            showInfo("Message", null, String.format("Message %d is no longer in the entity.", row.sequenceNumber()));
+            return;
         }
+        log("Message %d is no longer in the entity; showing the copy taken when it was peeked", row.sequenceNumber());
+        innerSplitPane.setDividerPositions(0.7);
+        propsTreeTableView.setVisible(true);
+        propsTreeTableView.setManaged(true);
+        var body = BodyCache.get(scope(), row.sequenceNumber(), row.messageId(), data.getBody(), data.getRawBody());
+        shownBody = body;
+        contentType.getSelectionModel().select(body.type());
+        messageEditor.replaceText(body.text());
+        populateTree(MapperUtils.toMap(data));
+        customPropsTableDataSetup(data.getApplicationProperties());
+    }
+
+    public void init(ServiceBusReceivedMessage serviceBusReceivedMessage) {
+        innerSplitPane.setDividerPositions(0.7);
+        propsTreeTableView.setVisible(true);
+        propsTreeTableView.setManaged(true);
+        this.serviceBusReceivedMessage = serviceBusReceivedMessage;
+        var body = BodyCache.get(scope(), serviceBusReceivedMessage);
+        shownBody = body;
+        contentType.getSelectionModel().select(body.type());
+        messageEditor.replaceText(body.text());
+        populateTree(MapperUtils.toMap(serviceBusReceivedMessage));
+        customPropsTableDataSetup(serviceBusReceivedMessage.getApplicationProperties());
     }
 
     public void handleContentTypeChange(ActionEvent actionEvent) {
@@ -428,22 +466,21 @@ public class MessageDialogController {
     }
 
     public void handleFormat(ActionEvent actionEvent) {
-        try {
-            String selectedItem = contentType.getSelectionModel().getSelectedItem();
-            switch (selectedItem) {
-                case "JSON" -> setupFormatedText(JsonEditor::format);
-                case "XML" -> setupFormatedText(XMLEditor::format);
-                default -> {
-                    var body = extractBody(serviceBusReceivedMessage);
-                    if (body == null) return;
-                    messageEditor.replaceText(body);
-                }
+        String selectedItem = contentType.getSelectionModel().getSelectedItem();
+        switch (selectedItem) {
+            case "JSON" -> setupFormatedText(JsonEditor::format);
+            case "XML" -> setupFormatedText(XMLEditor::format);
+            default -> {
+                if (shownBody == null) return;
+                messageEditor.replaceText(shownBody.text());
             }
-        } catch (IOException e) {
-            LogUtils.log("Exception Occured: %s", e.getMessage());
         }
     }
 
+    private BodyCache.Scope scope() {
+        return messageRow != null ? messageRow.store().scope() : null;
+    }
+
     void setupFormatedText(Function<String, String> formatter) {
         var text = messageEditor.getText();
         try {
@@ -490,6 +527,9 @@ public class MessageDialogController {
     private ServiceBusMessageData createServiceBusMessageData() {
         var ret = new ServiceBusMessageData();
         ret.setBody(messageEditor.getText());
+        if (shownBody != null && shownBody.raw() != null && shownBody.text().equals(ret.getBody())) {
+            ret.setRawBody(shownBody.raw());
+        }
 
         var root = propsTreeTableView.getRoot();
         if (root == null) {
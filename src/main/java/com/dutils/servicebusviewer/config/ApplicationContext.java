@@ -1,6 +1,7 @@
 package com.dutils.servicebusviewer.config;
 
 import com.dutils.servicebusviewer.MainUIController;
+import com.dutils.servicebusviewer.job.JobManager;
 import com.dutils.servicebusviewer.servicebus.ServiceBusManager;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -14,6 +15,7 @@ public class ApplicationContext {
     private static final ApplicationContext INSTANCE = new ApplicationContext();
 
     private final Map<String, ServiceBusManager> managers = new HashMap<>();
+    private final JobManager jobManager = new JobManager();
     private ServiceBusManager currentManager;
     private String currentNamespace;
 
@@ -64,6 +66,10 @@ public class ApplicationContext {
         return Map.copyOf(managers);
     }
 
+    public JobManager jobs() {
+        return jobManager;
+    }
+
     public MainUIController getMainUIController() {
         return mainUIController;
     }
@@ -0,0 +1,114 @@
+package com.dutils.servicebusviewer.job;
+
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle for a background operation started through {@link JobManager}.
+ * Work reports progress and polls for cancellation through {@link #getMeter()}.
+ */
+public class Job {
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    public enum State {
+        QUEUED, RUNNING, CANCELLING, COMPLETED, CANCELLED, FAILED;
+
+        public boolean isActive() {
+            return this == QUEUED || this == RUNNING || this == CANCELLING;
+        }
+    }
+
+    private final int id = IDS.incrementAndGet();
+    private final String name;
+    private final String namespace;
+    private final String entity;
+    private final ProgressMeter meter = new ProgressMeter();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile State state = State.QUEUED;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile String error;
+
+    Job(String name, String namespace, String entity) {
+        this.name = name;
+        this.namespace = namespace;
+        this.entity = entity;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public ProgressMeter getMeter() {
+        return meter;
+    }
+
+    /** Completes normally however the job ended; check {@link #getState()} for the outcome. */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    public long processed() {
+        return meter.count();
+    }
+
+    public double rate() {
+        return meter.rate();
+    }
+
+    public long etaSeconds() {
+        return meter.etaSeconds();
+    }
+
+    public void cancel() {
+        if (!state.isActive()) return;
+        meter.cancel();
+        if (state == State.RUNNING) state = State.CANCELLING;
+    }
+
+    public String progress() {
+        if (state == State.FAILED) return error;
+        if (state == State.QUEUED) return "Waiting for a free slot";
+        return meter.summary();
+    }
+
+    public String elapsed() {
+        if (startNanos == 0) return "";
+        long seconds = ((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos) / 1_000_000_000L;
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    void started() {
+        startNanos = System.nanoTime();
+        state = State.RUNNING;
+    }
+
+    void finished(Throwable failure) {
+        if (startNanos != 0) endNanos = System.nanoTime();
+        if (failure != null) {
+            error = failure.getMessage();
+            state = State.FAILED;
+        } else {
+            state = meter.isCancelled() ? State.CANCELLED : State.COMPLETED;
+        }
+        completion.complete(null);
+    }
+}
@@ -0,0 +1,120 @@
+package com.dutils.servicebusviewer.job;
+
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs bulk operations as {@link Job}s on virtual threads.
+ * A job locks every entity it touches, each under its own namespace: read-only scans share their lock, anything
+ * else holds it alone, and a submit that conflicts with a running job is rejected. At most
+ * {@link Constants#MAX_JOBS_PER_NAMESPACE} jobs run per namespace; the rest wait as QUEUED.
+ */
+public class JobManager {
+    // how often a queued job checks whether it was cancelled while waiting for a permit
+    private static final long QUEUE_POLL_MS = 200;
+
+    private final ObservableList<Job> jobs = FXCollections.observableArrayList();
+    // holders per namespace/entity: -1 while an exclusive job runs, else the number of shared ones
+    private final Map<String, Integer> entityLocks = new HashMap<>();
+    private final Map<String, Semaphore> namespacePermits = new HashMap<>();
+
+    /** An entity a job touches; shared locks (read-only scans) can be held together, an exclusive one only alone. */
+    public record Lock(String namespace, String entity, boolean shared) {
+        public static Lock exclusive(String namespace, String entity) {
+            return new Lock(namespace, entity, false);
+        }
+
+        public static Lock shared(String namespace, String entity) {
+            return new Lock(namespace, entity, true);
+        }
+
+        private String key() {
+            return namespace + "/" + entity;
+        }
+    }
+
+    /**
+     * Starts {@code work} under {@code namespace}'s job limit once every lock is free; {@code locks} is empty for jobs
+     * that don't touch an entity. The first lock is the entity shown for the job.
+     */
+    public synchronized Job submit(String name, String namespace, List<Lock> locks, Consumer<ProgressMeter> work) {
+        // an entity locked twice (e.g. a transfer within one queue) is locked once, exclusively if either lock is
+        Map<String, Boolean> keys = new HashMap<>();
+        locks.forEach(lock -> keys.merge(lock.key(), lock.shared(), Boolean::logicalAnd));
+        for (var lock : locks) {
+            int holders = entityLocks.getOrDefault(lock.key(), 0);
+            if (holders < 0 || holders > 0 && !keys.get(lock.key())) {
+                throw new IllegalStateException(String.format("A job is already running on %s", lock.entity()));
+            }
+        }
+        keys.forEach((key, shared) -> entityLocks.merge(key, shared ? 1 : -1, Integer::sum));
+        var job = new Job(name, namespace, locks.isEmpty() ? null : locks.get(0).entity());
+        var permits = namespacePermits.computeIfAbsent(namespace, ns -> new Semaphore(Constants.MAX_JOBS_PER_NAMESPACE, true));
+        Platform.runLater(() -> jobs.add(0, job));
+        Thread.ofVirtual().name("job-" + job.getId()).start(() -> run(job, keys, permits, work));
+        return job;
+    }
+
+    private void run(Job job, Map<String, Boolean> keys, Semaphore permits, Consumer<ProgressMeter> work) {
+        Throwable failure = null;
+        try {
+            if (acquire(job, permits)) {
+                try {
+                    if (!job.getMeter().isCancelled()) {
+                        job.started();
+                        work.accept(job.getMeter());
+                    }
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failure = e;
+            LogUtils.log("Job '%s' failed: %s", job.getName(), e.getMessage());
+        } finally {
+            synchronized (this) {
+                keys.forEach((key, shared) -> entityLocks.computeIfPresent(key, (k, holders) -> shared && holders > 1 ? holders - 1 : null));
+            }
+            job.finished(failure);
+        }
+    }
+
+    /** Waits for a permit; false once the job is cancelled while still queued, so it ends without one. */
+    private static boolean acquire(Job job, Semaphore permits) throws InterruptedException {
+        while (!permits.tryAcquire(QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+            if (job.getMeter().isCancelled()) return false;
+        }
+        return true;
+    }
+
+    /** Live list for the jobs panel; only touch it on the FX thread. */
+    public ObservableList<Job> getJobs() {
+        return jobs;
+    }
+
+    public void clearFinished() {
+        jobs.removeIf(job -> !job.getState().isActive());
+    }
+
+    public boolean hasActiveJobs() {
+        return jobs.stream().anyMatch(job -> job.getState().isActive());
+    }
+
+    public void cancelAll() {
+        jobs.forEach(Job::cancel);
+    }
+}
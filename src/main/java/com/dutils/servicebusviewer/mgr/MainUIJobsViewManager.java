@@ -0,0 +1,53 @@
+package com.dutils.servicebusviewer.mgr;
+
+import com.dutils.servicebusviewer.job.Job;
+import com.dutils.servicebusviewer.job.JobManager;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+
+import static com.dutils.servicebusviewer.utils.Utils.createColumn;
+
+public class MainUIJobsViewManager {
+    private final TableView<Job> jobsTableview;
+    private final JobManager jobManager;
+
+    public MainUIJobsViewManager(TableView<Job> jobsTableview, JobManager jobManager) {
+        this.jobsTableview = jobsTableview;
+        this.jobManager = jobManager;
+    }
+
+    public void initialize() {
+        jobsTableview.setItems(jobManager.getJobs());
+        jobsTableview.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_SUBSEQUENT_COLUMNS);
+        jobsTableview.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        jobsTableview.getColumns().setAll(
+                createColumn("Job", Job::getName, 120),
+                createColumn("Namespace", Job::getNamespace, 80),
+                createColumn("Entity", Job::getEntity, 100),
+                createColumn("State", Job::getState, 60),
+                createColumn("Progress", Job::progress, 220),
+                createColumn("Elapsed", Job::elapsed, 50)
+        );
+        // progress lives in the jobs' meters, not in observable properties, so re-read it once a second
+        var refresher = new Timeline(new KeyFrame(Duration.seconds(1), e -> {
+            if (!jobsTableview.getItems().isEmpty()) jobsTableview.refresh();
+        }));
+        refresher.setCycleCount(Animation.INDEFINITE);
+        refresher.play();
+    }
+
+    public void cancelSelected() {
+        new ArrayList<>(jobsTableview.getSelectionModel().getSelectedItems()).forEach(Job::cancel);
+        jobsTableview.refresh();
+    }
+
+    public void clearFinished() {
+        jobManager.clearFinished();
+    }
+}
@@ -3,94 +3,266 @@ package com.dutils.servicebusviewer.mgr;
 import com.azure.core.amqp.models.AmqpMessageBodyType;
 import com.azure.core.util.IterableStream;
 import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.administration.models.QueueProperties;
+import com.azure.messaging.servicebus.administration.models.SubscriptionProperties;
 import com.dutils.servicebusviewer.config.ApplicationContext;
+import com.dutils.servicebusviewer.model.DataTreeItem;
+import com.dutils.servicebusviewer.model.MessageRow;
 import com.dutils.servicebusviewer.model.NodeType;
+import com.dutils.servicebusviewer.servicebus.SessionBrowser;
+import com.dutils.servicebusviewer.servicebus.TimeSeek;
 import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.LongHashSet;
 import com.dutils.servicebusviewer.utils.MessageUtils;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+import com.dutils.servicebusviewer.utils.Utils;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.geometry.Orientation;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.stage.Modality;
+import javafx.util.Duration;
+import org.apache.commons.lang3.time.StopWatch;
 
-import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.dutils.servicebusviewer.utils.DialogUtils.showDialog;
 import static com.dutils.servicebusviewer.utils.Utils.createColumn;
+import static com.dutils.servicebusviewer.utils.Utils.createRowColumn;
+import static com.dutils.servicebusviewer.utils.Utils.fd;
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.comparingInt;
+import static java.util.Comparator.comparingLong;
 
 public class MainUIMessageTableViewManager {
-    private final TableView<ServiceBusReceivedMessage> msgTableview;
-    private final TableView<ServiceBusReceivedMessage> msgDlqTableview;
-    private long lastSequenceNumber = -1;
-    private boolean isPeekingActive;
-    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final TableView<MessageRow> msgTableview;
+    private final TableView<MessageRow> msgDlqTableview;
+    private final PagedBrowser browser = new PagedBrowser();
+    private final Map<TableView<MessageRow>, FilteredList<MessageRow>> views = new HashMap<>();
+    private final PauseTransition searchDelay = new PauseTransition(Duration.millis(200));
+    private String query = "";
+    // rows of each table's store matching the query; pages arriving later are searched and added to it
+    private final Map<TableView<MessageRow>, SearchHits> hits = new HashMap<>();
+    private TableView<MessageRow> openTable;
+    private final BooleanProperty following = new SimpleBooleanProperty();
+    private final PauseTransition followDelay = new PauseTransition();
+    private long followInterval;
 
-    public MainUIMessageTableViewManager(TableView<ServiceBusReceivedMessage> msgTableview, TableView<ServiceBusReceivedMessage> msgDlqTableview) {
+    public MainUIMessageTableViewManager(TableView<MessageRow> msgTableview, TableView<MessageRow> msgDlqTableview) {
         this.msgTableview = msgTableview;
         this.msgDlqTableview = msgDlqTableview;
+        addScrollListener(msgTableview);
+        addScrollListener(msgDlqTableview);
+        addFollowPause(msgTableview);
+        addFollowPause(msgDlqTableview);
+        followDelay.setOnFinished(e -> follow());
+        following.addListener((obs, was, on) -> {
+            followDelay.stop();
+            if (!on) return;
+            followInterval = Constants.FOLLOW_MIN_INTERVAL_MS;
+            follow();
+        });
     }
 
+    /** Clears both tables; the browse they showed is parked, so coming back to it is instant. */
     public void initialize() {
-        lastSequenceNumber = -1;
-        isPeekingActive = false;
-        try {
-            if (peekFuture != null && !peekFuture.isDone()) {
-                peekFuture.cancel(true);
-            }
-        } catch (Exception e) {
-            LogUtils.log("Error cancelling peekFuture: %s", e.getMessage());
-        }
+        following.set(false);
+        if (openTable != null) browser.park(rows(openTable));
+        openTable = null;
         setupTableview(msgTableview);
         setupTableview(msgDlqTableview);
     }
 
-    private void setupTableview(TableView<ServiceBusReceivedMessage> tableView) {
-        ObservableList<ServiceBusReceivedMessage> messages = FXCollections.observableArrayList();
-        tableView.setItems(messages);
+    private void setupTableview(TableView<MessageRow> tableView) {
+        ObservableList<MessageRow> messages = FXCollections.observableArrayList();
+        var filtered = new FilteredList<>(messages);
+        var sorted = new SortedList<>(filtered);
+        sorted.comparatorProperty().bind(tableView.comparatorProperty());
+        views.put(tableView, filtered);
+        tableView.setItems(sorted);
         tableView.getColumns().clear();
         tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_SUBSEQUENT_COLUMNS);
         tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         tableView.getColumns().addAll(
-                createColumn("Message Id", ServiceBusReceivedMessage::getMessageId, 50),
-                createColumn("Sequence", ServiceBusReceivedMessage::getSequenceNumber, 20),
-                createColumn("Subject", ServiceBusReceivedMessage::getSubject, 50),
-                createColumn("Delivery Count", ServiceBusReceivedMessage::getDeliveryCount, 20),
-                createColumn("Body Size", MainUIMessageTableViewManager::getMessageBodySize, 20),
-                createColumn("Type", d -> d.getRawAmqpMessage().getBody().getBodyType(), 20),
-                createColumn("Enqueued Time", d -> d.getEnqueuedTime() != null ? d.getEnqueuedTime().format(formatter) : "", 100)
+                createRowColumn("Message Id", MessageRow::messageId, nullsFirst(MessageRow::messageId), 50),
+                createRowColumn("Sequence", r -> Long.toString(r.sequenceNumber()), comparingLong(MessageRow::sequenceNumber), 20),
+                createRowColumn("Subject", MessageRow::subject, nullsFirst(MessageRow::subject), 50),
+                createRowColumn("Delivery Count", r -> Integer.toString(r.deliveryCount()), comparingInt(MessageRow::deliveryCount), 20),
+                createRowColumn("Body Size", r -> Integer.toString(r.bodySize()), comparingInt(MessageRow::bodySize), 20),
+                createRowColumn("Type", r -> r.bodyType().toString(), comparing(MessageRow::bodyType), 20),
+                createRowColumn("Enqueued Time (UTC)", MessageRow::enqueuedTime, comparing(MessageRow::enqueuedTime), 100)
         );
         addTableViewListener(tableView);
     }
 
+    /** Infinite scroll: asks for the next page once the view comes within the last tenth of its rows. */
+    private void addScrollListener(TableView<MessageRow> tableView) {
+        tableView.skinProperty().addListener((obs, oldSkin, skin) -> {
+            if (skin == null) return;
+            tableView.lookupAll(".scroll-bar").stream()
+                    .filter(node -> node instanceof ScrollBar bar && bar.getOrientation() == Orientation.VERTICAL)
+                    .map(ScrollBar.class::cast)
+                    .findFirst()
+                    .ifPresent(bar -> {
+                        bar.valueProperty().addListener((o, oldValue, value) -> {
+                            if (value.doubleValue() >= bar.getMax() * 0.9 && browser.isOpen() && !browser.isExhausted()) {
+                                browser.more();
+                            }
+                        });
+                        // dragging the thumb or paging with the track
+                        bar.addEventFilter(MouseEvent.MOUSE_RELEASED, e -> {
+                            if (bar.getValue() < bar.getMax() * 0.99) pauseFollowing();
+                        });
+                    });
+        });
+    }
+
+    /** Follow mode stops as soon as the user moves up from the newest messages. */
+    private void addFollowPause(TableView<MessageRow> tableView) {
+        tableView.addEventFilter(ScrollEvent.SCROLL, e -> {
+            if (e.getDeltaY() > 0) pauseFollowing();
+        });
+        tableView.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            if (e.getCode() == KeyCode.UP || e.getCode() == KeyCode.PAGE_UP || e.getCode() == KeyCode.HOME) pauseFollowing();
+        });
+    }
+
+    /** Follow (tail) mode: while set, the selected entity is polled past its last row and the table kept scrolled to the end. */
+    public BooleanProperty followingProperty() {
+        return following;
+    }
+
+    private void pauseFollowing() {
+        if (!following.get()) return;
+        following.set(false);
+        Utils.status("Follow paused: scrolled away from the newest messages");
+    }
+
+    /**
+     * One poll of follow mode: pages are fetched until one comes back empty, so a burst is caught up in one poll.
+     * The next poll comes after {@link Constants#FOLLOW_MIN_INTERVAL_MS} while messages keep arriving and backs off
+     * by doubling up to {@link Constants#FOLLOW_MAX_INTERVAL_MS} while the entity is idle. The table keeps the user's
+     * sort order; it is scrolled to the newest row wherever that sorts.
+     */
+    private void follow() {
+        var mainUi = ApplicationContext.getInstance().getMainUIController();
+        if (mainUi.getSelectedNode() == null) {
+            following.set(false);
+            return;
+        }
+        var name = mainUi.getSelectedNode().getValue().getName();
+        var tableView = mainUi.isDlq() ? msgDlqTableview : msgTableview;
+        long last = lastSequenceNumber(tableView);
+        var page = catchUp(browser.isOpen() ? browser.poll() : peekMessages());
+        page.whenComplete((v, e) -> Platform.runLater(() -> {
+            if (!following.get()) return;
+            var rows = rows(tableView);
+            boolean flowing = lastSequenceNumber(tableView) != last;
+            followInterval = flowing ? Math.max(Constants.FOLLOW_MIN_INTERVAL_MS, followInterval / 2)
+                    : Math.min(Constants.FOLLOW_MAX_INTERVAL_MS, followInterval * 2);
+            if (flowing) tableView.scrollTo(rows.get(rows.size() - 1));
+            Utils.status(String.format("Following %s: %d messages, next check in %.1fs", name, rows.size(), followInterval / 1000.0));
+            followDelay.setDuration(Duration.millis(followInterval));
+            followDelay.playFromStart();
+        }));
+    }
+
+    /** Keeps asking for the next page while follow mode is on and the last one was not the end of the entity. */
+    private CompletableFuture<Void> catchUp(CompletableFuture<Void> page) {
+        return page.thenCompose(v -> following.get() && browser.isOpen() && !browser.isExhausted()
+                ? catchUp(browser.more()) : CompletableFuture.completedFuture(null));
+    }
+
+    private long lastSequenceNumber(TableView<MessageRow> tableView) {
+        var rows = rows(tableView);
+        return rows.isEmpty() ? -1 : rows.get(rows.size() - 1).sequenceNumber();
+    }
+
+    /**
+     * Keeps only the newest {@link Constants#FOLLOW_MAX_ROWS} rows, dropping the oldest in one change, and lets the
+     * store drop their spilled copies and search postings.
+     */
+    private void trimToFollowLimit(TableView<MessageRow> tableView) {
+        var rows = rows(tableView);
+        int excess = rows.size() - Constants.FOLLOW_MAX_ROWS;
+        if (excess <= 0) return;
+        rows.remove(0, excess);
+        var oldest = rows.get(0);
+        oldest.store().dropBefore(oldest.index());
+    }
+
+    private static Comparator<MessageRow> nullsFirst(Function<MessageRow, String> key) {
+        return comparing(key, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    /** Body size in bytes, without copying DATA chunks or encoding VALUE/SEQUENCE text. Called once per message. */
     public static int getMessageBodySize(ServiceBusReceivedMessage message) {
         var raw = message.getRawAmqpMessage();
         AmqpMessageBodyType type = raw.getBody().getBodyType();
         return switch (type) {
             case DATA -> {
                 IterableStream<byte[]> dataStream = raw.getBody().getData();
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                int size = 0;
                 for (byte[] chunk : dataStream) {
-                    baos.write(chunk, 0, chunk.length);
+                    size += chunk.length;
                 }
-                yield baos.size();
+                yield size;
             }
             case VALUE -> {
                 Object value = raw.getBody().getValue();
-                yield (value == null) ? 0 : value.toString().getBytes().length;
+                yield (value == null) ? 0 : utf8Length(value.toString());
             }
             case SEQUENCE -> {
                 var seq = raw.getBody().getSequence();
-                yield (seq == null) ? 0 : seq.toString().getBytes().length;
+                yield (seq == null) ? 0 : utf8Length(seq.toString());
             }
             default -> 0;
         };
     }
 
-    private void addTableViewListener(TableView<ServiceBusReceivedMessage> tableView) {
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else length += 3;
+        }
+        return length;
+    }
+
+    private void addTableViewListener(TableView<MessageRow> tableView) {
 
         tableView.setOnMouseClicked(event -> {
             if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
@@ -108,47 +280,242 @@ public class MainUIMessageTableViewManager {
 
     }
 
-    private void handleShowMessageDetails(TableView<ServiceBusReceivedMessage> tableView) {
+    private void handleShowMessageDetails(TableView<MessageRow> tableView) {
         var selectedItem = tableView.getSelectionModel().getSelectedItem();
         if (selectedItem == null) return;
         showDialog("message-dialog.fxml", "Message Details", selectedItem);
     }
 
-    public CompletableFuture<?> peekFuture;
-
-    public void peekMessages( int count) {
+    /**
+     * Starts browsing the selected entity, or shows the next page when a browse is already open.
+     * The returned future completes once the page is in the table.
+     */
+    public CompletableFuture<Void> peekMessages() {
+        if (browser.isOpen()) return browser.more();
         var mainUi = ApplicationContext.getInstance().getMainUIController();
         var item = mainUi.getSelectedNode();
-        var type = item.getValue().getType();
-        var isSubscription = type==NodeType.SUBSCRIPTION;
-        var entity = isSubscription? item.getParent().getValue().getName():item.getValue().getName();
-        var subEntity = isSubscription? item.getValue().getName():null;
-
+        if (item == null || item.getValue().getType() == NodeType.NONE) return CompletableFuture.completedFuture(null);
+        var entity = MessageUtils.parseNode(item);
         boolean isDlq = mainUi.isDlq();
         var tableView = isDlq ? msgDlqTableview : msgTableview;
+        var sink = sink(tableView);
+        var key = cacheKey(entity, isDlq);
+        openTable = tableView;
+        var cached = browser.resume(key, sink);
+        if (cached != null) return refresh(tableView, entity, cached);
+        if (!isDlq && requiresSession(item.getValue())) {
+            mainUi.showProgress("Browsing Sessions");
+            return browser.open(key, entity.path(), null, sessionSource(entity), sink)
+                    .whenComplete((v, e) -> mainUi.hideProgress());
+        }
+        var receiver = ApplicationContext.getInstance().currentManager()
+                .getReceiver(entity.type(), entity.name(), entity.sub(), null, isDlq);
 
-        isPeekingActive = true;
         mainUi.showProgress("Peeking Messages");
+        return browser.open(key, receiver, entity.path(), sink)
+                .whenComplete((v, e) -> mainUi.hideProgress());
+    }
+
+    private Consumer<List<MessageRow>> sink(TableView<MessageRow> tableView) {
+        return page -> {
+            if (!query.isBlank()) searchPage(tableView, page);
+            rows(tableView).addAll(page);
+            if (following.get()) trimToFollowLimit(tableView);
+            if (!query.isBlank()) showSearchStatus(tableView);
+        };
+    }
 
-        peekFuture = CompletableFuture.runAsync(() ->
-                MessageUtils.peekMessages(type, entity, subEntity, count, isDlq, lastSequenceNumber + 1)
-                        .forEach(msg -> {
-                            runActive(() -> tableView.getItems().add(msg));
-                            lastSequenceNumber = msg.getSequenceNumber();
-                        })
-        ).exceptionally(e -> {
-            LogUtils.log("Error peeking messages: %s", e.getMessage());
-            return null;
-        }).whenComplete((result, ex) -> mainUi.hideProgress());
-    }
-
-    void runActive(Runnable r) {
-        Platform.runLater(() -> {
-            if (isPeekingActive)
-                r.run();
+    /**
+     * Replaces the selected entity's browse with one starting at the first message enqueued at or after {@code time},
+     * found by a {@link TimeSeek} in a logarithmic number of peeks.
+     */
+    public void seekTo(OffsetDateTime time) {
+        var mainUi = ApplicationContext.getInstance().getMainUIController();
+        var item = mainUi.getSelectedNode();
+        if (item == null || item.getValue().getType() == NodeType.NONE) return;
+        var entity = MessageUtils.parseNode(item);
+        boolean isDlq = mainUi.isDlq();
+        if (!isDlq && requiresSession(item.getValue())) {
+            Utils.status("Jump to time is not available for session-enabled entities");
+            return;
+        }
+        var tableView = isDlq ? msgDlqTableview : msgTableview;
+        var key = cacheKey(entity, isDlq);
+        following.set(false);
+        browser.discard(key);
+        openTable = null;
+        rows(tableView).clear();
+        var receiver = ApplicationContext.getInstance().currentManager()
+                .getReceiver(entity.type(), entity.name(), entity.sub(), null, isDlq);
+        var sw = StopWatch.createStarted();
+        mainUi.showProgress("Seeking to " + time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        CompletableFuture.supplyAsync(() -> new TimeSeek(receiver).find(time))
+                .whenComplete((result, e) -> Platform.runLater(() -> {
+                    mainUi.hideProgress();
+                    if (e != null) {
+                        LogUtils.log("Error seeking %s: %s", entity.path(), e.getMessage());
+                        return;
+                    }
+                    LogUtils.log("Seek in %s took %d peeks in %s secs", entity.path(), result.peeks(), fd(sw));
+                    if (mainUi.getSelectedNode() != item || mainUi.isDlq() != isDlq) return;
+                    if (result.sequenceNumber() < 0) {
+                        Utils.status(String.format("%s: nothing enqueued at or after that time", entity.path()));
+                        return;
+                    }
+                    Utils.status(String.format("%s: browsing from sequence %d", entity.path(), result.sequenceNumber()));
+                    openTable = tableView;
+                    browser.open(key, receiver, entity.path(), result.sequenceNumber(), sink(tableView));
+                }));
+    }
+
+    /** Shows a parked browse at once, then peeks the messages enqueued after its last row. */
+    private CompletableFuture<Void> refresh(TableView<MessageRow> tableView, MessageUtils.Entity entity, PagedBrowser.Cached cached) {
+        var mainUi = ApplicationContext.getInstance().getMainUIController();
+        rows(tableView).setAll(cached.rows());
+        if (!query.isBlank()) applySearch(tableView);
+        var age = age(cached.since());
+        Utils.status(String.format("%s: %d cached messages from %s ago, checking for newer ones",
+                entity.path(), cached.rows().size(), age));
+        mainUi.showProgress("Refreshing Messages");
+        return browser.more().whenComplete((v, e) -> {
+            mainUi.hideProgress();
+            if (openTable != tableView) return;
+            Utils.status(String.format("%s: %d messages cached %s ago, %d newer peeked; Refresh drops messages settled since",
+                    entity.path(), cached.rows().size(), age, rows(tableView).size() - cached.rows().size()));
         });
     }
-}
 
+    /** Forgets the selected entity's browse, so the next peek starts from the first message again. */
+    public void discardSelected() {
+        var mainUi = ApplicationContext.getInstance().getMainUIController();
+        var item = mainUi.getSelectedNode();
+        openTable = null;
+        if (item == null || item.getValue().getType() == NodeType.NONE) {
+            browser.close();
+            return;
+        }
+        browser.discard(cacheKey(MessageUtils.parseNode(item), mainUi.isDlq()));
+    }
+
+    private static String cacheKey(MessageUtils.Entity entity, boolean isDlq) {
+        return String.format("%s/%s%s", ApplicationContext.getInstance().currentNamespace(), entity.path(),
+                isDlq ? "/$deadletterqueue" : "");
+    }
+
+    private static String age(Instant since) {
+        long secs = java.time.Duration.between(since, Instant.now()).toSeconds();
+        if (secs < 60) return secs + "s";
+        if (secs < 3600) return secs / 60 + "m";
+        return secs / 3600 + "h " + secs % 3600 / 60 + "m";
+    }
+
+    /**
+     * Session entities can't be peeked without a session, so pages come session by session. The sessions of the
+     * first pass are listed in a dialog; later passes (refresh, follow, resume) only add newer messages.
+     */
+    private PagedBrowser.PageSource sessionSource(MessageUtils.Entity entity) {
+        var mgr = ApplicationContext.getInstance().currentManager();
+        var sw = StopWatch.createStarted();
+        var listed = new AtomicBoolean();
+        return new SessionBrowser(mgr, entity, new ProgressMeter(), result -> {
+            LogUtils.log("Browsed %d sessions (%d messages) of %s in %s secs",
+                    result.sessions().size(), result.messages(), entity.path(), fd(sw));
+            if (!listed.getAndSet(true)) Platform.runLater(() -> showSessions(entity, result));
+        });
+    }
+
+    private static boolean requiresSession(DataTreeItem item) {
+        return item.getProperties() instanceof QueueProperties q ? q.isSessionRequired()
+                : item.getProperties() instanceof SubscriptionProperties s && s.isSessionRequired();
+    }
 
+    private void showSessions(MessageUtils.Entity entity, SessionBrowser.Result result) {
+        TableView<SessionBrowser.SessionInfo> sessions = new TableView<>(FXCollections.observableArrayList(result.sessions()));
+        sessions.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_SUBSEQUENT_COLUMNS);
+        sessions.getColumns().addAll(
+                createColumn("Session Id", SessionBrowser.SessionInfo::sessionId, 200),
+                createColumn("Messages", s -> s.more() ? s.messageCount() + "+" : String.valueOf(s.messageCount()), 80),
+                createColumn("State", SessionBrowser.SessionInfo::state, 300));
+        sessions.setPrefSize(620, 400);
+
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Sessions");
+        alert.setHeaderText(String.format("%s: %d sessions, %d messages%s", entity.path(), result.sessions().size(),
+                result.messages(), result.truncated() ? " (session limit reached)" : ""));
+        alert.setGraphic(null);
+        alert.getDialogPane().setContent(sessions);
+        alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+        alert.setResizable(true);
+        alert.initModality(Modality.NONE);
+        alert.show();
+    }
 
+    /** All loaded rows of a table, whatever the search filter and sort order. */
+    @SuppressWarnings("unchecked")
+    public ObservableList<MessageRow> rows(TableView<MessageRow> tableView) {
+        return (ObservableList<MessageRow>) views.get(tableView).getSource();
+    }
+
+    public void removeRows(TableView<MessageRow> tableView, LongHashSet sequenceNumbers) {
+        rows(tableView).removeIf(row -> sequenceNumbers.contains(row.sequenceNumber()));
+    }
+
+    /** Filters both tables as the user types, once typing pauses. */
+    public void bindSearch(TextField searchField) {
+        searchField.textProperty().addListener((obs, oldText, text) -> {
+            searchDelay.stop();
+            searchDelay.setOnFinished(e -> {
+                query = text == null ? "" : text;
+                applySearch(msgTableview);
+                applySearch(msgDlqTableview);
+            });
+            searchDelay.playFromStart();
+        });
+    }
+
+    private record SearchHits(MessageStore store, BitSet rows) {
+    }
+
+    private void applySearch(TableView<MessageRow> tableView) {
+        var rows = rows(tableView);
+        applySearch(tableView, rows.isEmpty() ? null : rows.get(0).store());
+    }
+
+    /** Searches the whole store and refilters the table; rows of the store not yet in the table are covered too. */
+    private void applySearch(TableView<MessageRow> tableView, MessageStore store) {
+        var filtered = views.get(tableView);
+        if (filtered == null) return;
+        var matches = query.isBlank() || store == null ? null : store.search(query);
+        if (matches == null) {
+            hits.remove(tableView);
+            filtered.setPredicate(null);
+            return;
+        }
+        hits.put(tableView, new SearchHits(store, matches));
+        filtered.setPredicate(row -> matches.get(row.index()));
+        showSearchStatus(tableView);
+    }
+
+    /**
+     * Searches only the rows of a page about to be added, so the filter keeps its predicate and tests just them.
+     * A page from another store (a new browse) searches that store afresh.
+     */
+    private void searchPage(TableView<MessageRow> tableView, List<MessageRow> page) {
+        if (page.isEmpty()) return;
+        var store = page.get(0).store();
+        var current = hits.get(tableView);
+        if (current == null || current.store() != store) {
+            applySearch(tableView, store);
+            return;
+        }
+        var found = store.search(query, page.get(0).index());
+        if (found != null) current.rows().or(found);
+    }
+
+    private void showSearchStatus(TableView<MessageRow> tableView) {
+        var current = hits.get(tableView);
+        if (current == null) return;
+        Utils.status(String.format("Search: %d of %d loaded messages match%s", views.get(tableView).size(), rows(tableView).size(),
+                current.store().isSearchIncomplete() ? " (index full, newer terms are not searchable)" : ""));
+    }
+}
@@ -7,6 +7,7 @@ import com.azure.messaging.servicebus.administration.models.*;
         import com.dutils.servicebusviewer.config.ApplicationContext;
 import com.dutils.servicebusviewer.model.DataTreeItem;
 import com.dutils.servicebusviewer.model.NodeType;
+import com.dutils.servicebusviewer.utils.FxBatcher;
 import com.fasterxml.jackson.core.type.TypeReference;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
@@ -19,6 +20,8 @@ import javafx.util.Pair;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.time.StopWatch;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -37,6 +40,9 @@ public class MainUITreeAndTableViewManager {
 
     private final TableView<Pair<String, String>> tableView;
     ApplicationContext context = ApplicationContext.getInstance();
+    // (parent, child) pairs from the loader threads, attached once per frame
+    private final FxBatcher<Pair<TreeItem<DataTreeItem>, TreeItem<DataTreeItem>>> treeUpdates =
+            new FxBatcher<>(MainUITreeAndTableViewManager::attach);
 
     public MainUITreeAndTableViewManager(TreeView<DataTreeItem> treeView, TableView<Pair<String, String>> tableView) {
         this.treeView = treeView;
@@ -147,10 +153,10 @@ public class MainUITreeAndTableViewManager {
         return queueNode;
     }
 
-    static void processQueue(ServiceBusAdministrationClient adminClient, QueueProperties staticprops, TreeItem<DataTreeItem> queueNode) {
+    void processQueue(ServiceBusAdministrationClient adminClient, QueueProperties staticprops, TreeItem<DataTreeItem> queueNode) {
         var sw = StopWatch.createStarted();
         QueueRuntimeProperties qProps = adminClient.getQueueRuntimeProperties(staticprops.getName());
-        runLater(() -> queueNode.getChildren().add(createNode(staticprops.getName(), qProps, NodeType.QUEUE, ENVELOPE, Color.BLUEVIOLET, staticprops)));
+        treeUpdates.add(new Pair<>(queueNode, createNode(staticprops.getName(), qProps, NodeType.QUEUE, ENVELOPE, Color.BLUEVIOLET, staticprops)));
         com.dutils.servicebusviewer.utils.LogUtils.log("Time %s — Queue: %s", fd(sw), staticprops.getName());
     }
 
@@ -163,7 +169,7 @@ public class MainUITreeAndTableViewManager {
         return topicsNode;
     }
 
-    private static void processTopics(TopicProperties staticProps, ServiceBusAdministrationClient adminClient, TreeItem<DataTreeItem> mainTopicsNode) {
+    private void processTopics(TopicProperties staticProps, ServiceBusAdministrationClient adminClient, TreeItem<DataTreeItem> mainTopicsNode) {
         var sw = StopWatch.createStarted();
         TopicRuntimeProperties tProps = adminClient.getTopicRuntimeProperties(staticProps.getName());
         PagedIterable<SubscriptionProperties> subscriptions = adminClient.listSubscriptions(staticProps.getName());
@@ -172,19 +178,22 @@ public class MainUITreeAndTableViewManager {
                         SubscriptionProperties::getSubscriptionName,
                         sub -> adminClient.getSubscriptionRuntimeProperties(staticProps.getName(), sub.getSubscriptionName())
                 ));
-        runLater(() -> {
-            var specificTopicNode = createNode(staticProps.getName(), tProps, NodeType.TOPIC, HOCKEY_PUCK, Color.DARKBLUE, staticProps);
-            mainTopicsNode.getChildren().add(specificTopicNode);
-            subscriptions.forEach((subStaticProps) -> {
-                var subsProps = runtimePropsMap.get(subStaticProps.getSubscriptionName());
-                specificTopicNode.getChildren().add(createNode(
-                        subStaticProps.getSubscriptionName(), subsProps, NodeType.SUBSCRIPTION, ENVELOPE, Color.DARKBLUE, subStaticProps));
-            });
+        var specificTopicNode = createNode(staticProps.getName(), tProps, NodeType.TOPIC, HOCKEY_PUCK, Color.DARKBLUE, staticProps);
+        subscriptions.forEach((subStaticProps) -> {
+            var subsProps = runtimePropsMap.get(subStaticProps.getSubscriptionName());
+            specificTopicNode.getChildren().add(createNode(
+                    subStaticProps.getSubscriptionName(), subsProps, NodeType.SUBSCRIPTION, ENVELOPE, Color.DARKBLUE, subStaticProps));
         });
+        treeUpdates.add(new Pair<>(mainTopicsNode, specificTopicNode));
         com.dutils.servicebusviewer.utils.LogUtils.log("Loaded %s topic in %s secs.", fd(sw), staticProps.getName());
     }
 
-
+    /** Adds each parent's new children with one {@code addAll}, so the tree re-lays out once per parent per frame. */
+    private static void attach(List<Pair<TreeItem<DataTreeItem>, TreeItem<DataTreeItem>>> updates) {
+        Map<TreeItem<DataTreeItem>, List<TreeItem<DataTreeItem>>> byParent = new LinkedHashMap<>();
+        updates.forEach(u -> byParent.computeIfAbsent(u.getKey(), k -> new ArrayList<>()).add(u.getValue()));
+        byParent.forEach((parent, children) -> parent.getChildren().addAll(children));
+    }
 }
 
 
@@ -0,0 +1,374 @@
+package com.dutils.servicebusviewer.mgr;
+
+import com.azure.core.amqp.models.AmqpMessageBodyType;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.dutils.servicebusviewer.model.MessageRow;
+import com.dutils.servicebusviewer.model.ServiceBusMessageData;
+import com.dutils.servicebusviewer.utils.BodyCache;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.JsonFileUtil;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.MapperUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Store for the messages of one browse. What the table shows is computed once on the ingesting thread and kept in
+ * primitive column arrays (subjects and enqueue times dictionary-encoded); a {@link MessageRow} is only a view over
+ * (store, index). Each message is also spilled as compact JSON to a temporary file, up to
+ * {@link Constants#MESSAGE_SPILL_LIMIT_MB}, so no body stays on the heap. Rows are also tokenized into a {@link SearchIndex} as they arrive. A full {@link ServiceBusReceivedMessage} is only rebuilt for the row that is
+ * opened, by peeking it again. A browse that keeps only its newest rows (follow mode) {@link #dropBefore drops}
+ * the older ones, so the spill and the index stay bounded too.
+ */
+public class MessageStore implements AutoCloseable {
+    private static final int INITIAL_CAPACITY = 256;
+    // MessageRow and its column slots, before the message id text
+    private static final int ROW_BYTES = 80;
+    // a dictionary string and its map entry, before the text
+    private static final int DICTIONARY_ENTRY_BYTES = 96;
+    private static final AmqpMessageBodyType[] BODY_TYPES = AmqpMessageBodyType.values();
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ServiceBusReceiverClient receiver;
+    private final String entityName;
+    private final BodyCache.Scope scope;
+    private final long spillLimit = Constants.MESSAGE_SPILL_LIMIT_MB * 1024L * 1024L;
+
+    // rows before base were dropped; row i is in slot i - base of the column arrays
+    private int base;
+    private int size;
+    private long[] sequenceNumbers = new long[INITIAL_CAPACITY];
+    private String[] messageIds = new String[INITIAL_CAPACITY];
+    private int[] subjects = new int[INITIAL_CAPACITY];
+    private int[] deliveryCounts = new int[INITIAL_CAPACITY];
+    private int[] bodySizes = new int[INITIAL_CAPACITY];
+    private byte[] bodyTypes = new byte[INITIAL_CAPACITY];
+    private int[] enqueuedTimes = new int[INITIAL_CAPACITY];
+    private long[] spillOffsets = new long[INITIAL_CAPACITY];
+    private int[] spillLengths = new int[INITIAL_CAPACITY];
+    // subjects and enqueue times; code -1 is null
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final SearchIndex index = new SearchIndex();
+
+    private FileChannel spill;
+    private long spillSize;
+    private boolean overBudget;
+    private long rowBytes;
+
+    public MessageStore(ServiceBusReceiverClient receiver, String entityName) {
+        this.receiver = receiver;
+        this.entityName = entityName;
+        this.scope = receiver != null ? BodyCache.Scope.of(receiver) : null;
+        try {
+            Path file = Files.createTempFile("servicebusviewer-", ".spill");
+            spill = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            LogUtils.log("Unable to create message spill file, opened messages will be peeked again: %s", e.getMessage());
+        }
+    }
+
+    /** Adds a page of peeked messages and returns their rows. Encoding and tokenizing happen on the calling thread. */
+    public List<MessageRow> append(List<ServiceBusReceivedMessage> messages) {
+        var encoded = new byte[messages.size()][];
+        List<Set<String>> tokens = new ArrayList<>(messages.size());
+        for (int i = 0; i < encoded.length; i++) {
+            var msg = messages.get(i);
+            var data = MapperUtils.toServiceBusMessageData(msg, null);
+            encoded[i] = encode(msg, data);
+            tokens.add(tokens(msg, data));
+        }
+        var rows = new ArrayList<MessageRow>(messages.size());
+        synchronized (this) {
+            ensureCapacity(size + messages.size());
+            long[] offsets = spill(encoded);
+            for (int i = 0; i < encoded.length; i++) {
+                var msg = messages.get(i);
+                int slot = size - base;
+                sequenceNumbers[slot] = msg.getSequenceNumber();
+                messageIds[slot] = msg.getMessageId();
+                subjects[slot] = code(msg.getSubject());
+                deliveryCounts[slot] = (int) msg.getDeliveryCount();
+                bodySizes[slot] = MainUIMessageTableViewManager.getMessageBodySize(msg);
+                bodyTypes[slot] = (byte) msg.getRawAmqpMessage().getBody().getBodyType().ordinal();
+                enqueuedTimes[slot] = code(msg.getEnqueuedTime() != null
+                        ? msg.getEnqueuedTime().atZoneSameInstant(ZoneOffset.UTC).format(TIME_FORMAT) : "");
+                spillOffsets[slot] = offsets[i];
+                spillLengths[slot] = encoded[i] == null ? 0 : encoded[i].length;
+                index.add(size, tokens.get(i));
+                rowBytes += ROW_BYTES + 2L * length(msg.getMessageId());
+                rows.add(new MessageRow(this, size++));
+            }
+        }
+        return rows;
+    }
+
+    /** The entity the rows were peeked from, for {@link BodyCache} lookups; null when the store has no receiver. */
+    public BodyCache.Scope scope() {
+        return scope;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Column reads for MessageRow; a dropped row reads as empty.
+
+    public synchronized long sequenceNumber(int index) {
+        return index < base ? -1 : sequenceNumbers[index - base];
+    }
+
+    public synchronized String messageId(int index) {
+        return index < base ? null : messageIds[index - base];
+    }
+
+    public synchronized String subject(int index) {
+        return index < base ? null : decode(subjects[index - base]);
+    }
+
+    public synchronized int deliveryCount(int index) {
+        return index < base ? 0 : deliveryCounts[index - base];
+    }
+
+    public synchronized int bodySize(int index) {
+        return index < base ? 0 : bodySizes[index - base];
+    }
+
+    public synchronized AmqpMessageBodyType bodyType(int index) {
+        return index < base ? AmqpMessageBodyType.DATA : BODY_TYPES[bodyTypes[index - base]];
+    }
+
+    public synchronized String enqueuedTime(int index) {
+        return index < base ? "" : decode(enqueuedTimes[index - base]);
+    }
+
+    /** Rough heap footprint of the rows and the search index; bodies are on disk and not counted. */
+    public synchronized long heapBytes() {
+        return rowBytes + index.heapBytes();
+    }
+
+    /** Bytes in the spill file; it stays open, and on disk, until the store is closed. */
+    public synchronized long spillBytes() {
+        return spill == null ? 0 : spillSize;
+    }
+
+    /** Indices of the rows matching a {@link SearchIndex} query, or null when the query has no terms. */
+    public BitSet search(String query) {
+        return index.search(query);
+    }
+
+    /** Like {@link #search(String)} over the rows from {@code fromRow} on, for pages added after a search. */
+    public BitSet search(String query, int fromRow) {
+        return index.search(query, fromRow);
+    }
+
+    /** True when some loaded rows could not be fully indexed ({@link Constants#SEARCH_MAX_TERMS}). */
+    public boolean isSearchIncomplete() {
+        return index.isIncomplete();
+    }
+
+    /**
+     * Forgets the rows before {@code index}: their postings leave the search index, their column slots are reclaimed,
+     * the dictionary is rebuilt from the kept rows and their spilled copies are cut from the spill file. The work waits until the dropped rows are as many as the rows kept, so trimming after
+     * every page costs a constant amount per row.
+     */
+    public synchronized void dropBefore(int index) {
+        int dropped = Math.min(index, size) - base;
+        if (dropped <= 0 || dropped < size - index) return;
+        this.index.removeBefore(index);
+        int kept = size - index;
+        for (var column : new Object[]{sequenceNumbers, messageIds, subjects, deliveryCounts, bodySizes, bodyTypes,
+                enqueuedTimes, spillOffsets, spillLengths}) {
+            System.arraycopy(column, dropped, column, 0, kept);
+        }
+        Arrays.fill(messageIds, kept, kept + dropped, null);
+        base = index;
+        rowBytes = 0;
+        for (int i = 0; i < kept; i++) rowBytes += ROW_BYTES + 2L * length(messageIds[i]);
+        var old = new ArrayList<>(dictionary);
+        dictionary.clear();
+        codes.clear();
+        for (int i = 0; i < kept; i++) {
+            subjects[i] = code(subjects[i] < 0 ? null : old.get(subjects[i]));
+            enqueuedTimes[i] = code(enqueuedTimes[i] < 0 ? null : old.get(enqueuedTimes[i]));
+        }
+        compactSpill();
+    }
+
+    /** Reads the spilled copy of a message; null when it was not spilled, was dropped or the store is closed. */
+    public synchronized ServiceBusMessageData data(int index) {
+        if (index < base || spill == null) return null;
+        long offset = spillOffsets[index - base];
+        int length = spillLengths[index - base];
+        if (offset < 0) return null;
+        try {
+            var buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (spill.read(buffer, offset + buffer.position()) < 0) return null;
+            }
+            return JsonFileUtil.fromBytes(buffer.array(), ServiceBusMessageData.class);
+        } catch (IOException e) {
+            LogUtils.log("Unable to read spilled row %d of %s: %s", index, entityName, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Peeks the message at {@code seq} again; null when it is no longer in the entity or the store has no receiver. */
+    public CompletableFuture<ServiceBusReceivedMessage> rehydrate(long seq) {
+        if (receiver == null) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.supplyAsync(() -> {
+            var msg = receiver.peekMessage(seq);
+            return msg != null && msg.getSequenceNumber() == seq ? msg : null;
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (spill == null) return;
+        try {
+            spill.close();
+        } catch (IOException e) {
+            LogUtils.log("Unable to delete message spill file of %s: %s", entityName, e.getMessage());
+        }
+        spill = null;
+    }
+
+    private byte[] encode(ServiceBusReceivedMessage msg, ServiceBusMessageData data) {
+        try {
+            return JsonFileUtil.toBytes(data);
+        } catch (IOException e) {
+            LogUtils.log("Unable to encode message %d for spilling: %s", msg.getSequenceNumber(), e.getMessage());
+            return null;
+        }
+    }
+
+    /** Body (up to {@link Constants#SEARCH_MAX_BODY_CHARS}), application properties and system properties. */
+    private static Set<String> tokens(ServiceBusReceivedMessage msg, ServiceBusMessageData data) {
+        Set<String> tokens = new HashSet<>();
+        var body = data.getBody();
+        if (body != null && body.length() > Constants.SEARCH_MAX_BODY_CHARS) body = body.substring(0, Constants.SEARCH_MAX_BODY_CHARS);
+        SearchIndex.tokenize(body, tokens);
+        data.getApplicationProperties().forEach((k, v) -> {
+            SearchIndex.tokenize(k, tokens);
+            SearchIndex.tokenize(String.valueOf(v), tokens);
+        });
+        for (var value : new String[]{msg.getMessageId(), msg.getCorrelationId(), msg.getSessionId(), msg.getSubject(),
+                msg.getTo(), msg.getReplyTo(), msg.getContentType(), msg.getPartitionKey(),
+                msg.getDeadLetterReason(), msg.getDeadLetterErrorDescription(), msg.getDeadLetterSource()}) {
+            SearchIndex.tokenize(value, tokens);
+        }
+        return tokens;
+    }
+
+    /** Rows are spilled in order, so the kept ones are the tail of the file: it is copied to a new file and rebased. */
+    private void compactSpill() {
+        if (spill == null) return;
+        long from = spillSize;
+        for (int i = 0; i < size - base; i++) {
+            if (spillOffsets[i] >= 0) {
+                from = spillOffsets[i];
+                break;
+            }
+        }
+        if (from == 0) return;
+        try {
+            var compacted = FileChannel.open(Files.createTempFile("servicebusviewer-", ".spill"), READ, WRITE, DELETE_ON_CLOSE);
+            long copied = 0;
+            while (copied < spillSize - from) copied += spill.transferTo(from + copied, spillSize - from - copied, compacted);
+            spill.close();
+            spill = compacted;
+            spillSize -= from;
+            for (int i = 0; i < size - base; i++) if (spillOffsets[i] >= 0) spillOffsets[i] -= from;
+            overBudget = false;
+        } catch (IOException e) {
+            LogUtils.log("Unable to compact message spill file of %s: %s", entityName, e.getMessage());
+        }
+    }
+
+    /** Appends the records to the spill file in one write; offsets are -1 for records that were not spilled. */
+    private long[] spill(byte[][] records) {
+        var offsets = new long[records.length];
+        Arrays.fill(offsets, -1);
+        if (spill == null) return offsets;
+        int total = 0;
+        for (var record : records) if (record != null) total += record.length;
+        if (spillSize + total > spillLimit) {
+            if (!overBudget) {
+                LogUtils.log("Message spill of %s reached %d MB; further messages are peeked again when opened",
+                        entityName, Constants.MESSAGE_SPILL_LIMIT_MB);
+                overBudget = true;
+            }
+            return offsets;
+        }
+        var buffer = ByteBuffer.allocate(total);
+        for (int i = 0; i < records.length; i++) {
+            if (records[i] == null) continue;
+            offsets[i] = spillSize + buffer.position();
+            buffer.put(records[i]);
+        }
+        buffer.flip();
+        try {
+            long position = spillSize;
+            while (buffer.hasRemaining()) position += spill.write(buffer, position);
+            spillSize = position;
+        } catch (IOException e) {
+            LogUtils.log("Unable to spill messages of %s: %s", entityName, e.getMessage());
+            Arrays.fill(offsets, -1);
+        }
+        return offsets;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /** The dictionary code of {@code value}, adding it when new. */
+    private int code(String value) {
+        if (value == null) return -1;
+        var code = codes.get(value);
+        if (code != null) return code;
+        rowBytes += DICTIONARY_ENTRY_BYTES + 2L * value.length();
+        codes.put(value, dictionary.size());
+        dictionary.add(value);
+        return dictionary.size() - 1;
+    }
+
+    private String decode(int code) {
+        return code < 0 ? null : dictionary.get(code);
+    }
+
+    private void ensureCapacity(int capacity) {
+        capacity -= base;
+        if (capacity <= spillOffsets.length) return;
+        int grown = Math.max(capacity, spillOffsets.length * 2);
+        sequenceNumbers = Arrays.copyOf(sequenceNumbers, grown);
+        messageIds = Arrays.copyOf(messageIds, grown);
+        subjects = Arrays.copyOf(subjects, grown);
+        deliveryCounts = Arrays.copyOf(deliveryCounts, grown);
+        bodySizes = Arrays.copyOf(bodySizes, grown);
+        bodyTypes = Arrays.copyOf(bodyTypes, grown);
+        enqueuedTimes = Arrays.copyOf(enqueuedTimes, grown);
+        spillOffsets = Arrays.copyOf(spillOffsets, grown);
+        spillLengths = Arrays.copyOf(spillLengths, grown);
+    }
+}
@@ -0,0 +1,272 @@
+package com.dutils.servicebusviewer.mgr;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.dutils.servicebusviewer.model.MessageRow;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.FxBatcher;
+import com.dutils.servicebusviewer.utils.LogUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Pages through an entity with peek, one page always being read ahead in the background.
+ * Page size starts at {@link Constants#PEEK_SIZE} for a quick first paint and doubles up to
+ * {@link Constants#MAX_PEEK_SIZE}. The cursor lives in a per-browse {@link Session} that is only touched
+ * by its single in-flight fetch, and {@link #close()} orphans the session so late pages are dropped.
+ * Pages are added to the session's {@link MessageStore} on the fetching thread and reach the table as rows
+ * through an {@link FxBatcher}, so any number of pages landing together cost one table update per frame.
+ * <p>
+ * A browse that is left is {@link #park parked} with its rows under its key instead of being closed, and
+ * {@link #resume resumed} from there: parked browses form an LRU cache bounded both by the estimated heap of their rows
+ * and search indices ({@link Constants#PAGE_CACHE_LIMIT_MB}) and by the spill files they keep open
+ * ({@link Constants#PAGE_CACHE_SPILL_LIMIT_MB}). Parking, resuming and eviction happen on the FX thread.
+ */
+public class PagedBrowser {
+    private volatile Session session;
+    private final Map<String, Session> parked = new LinkedHashMap<>(16, 0.75f, true);
+    private final long parkedLimit = Constants.PAGE_CACHE_LIMIT_MB * 1024L * 1024L;
+    private final long parkedSpillLimit = Constants.PAGE_CACHE_SPILL_LIMIT_MB * 1024L * 1024L;
+    private long parkedBytes;
+    private long parkedSpillBytes;
+
+    /** What a resumed browse starts from. */
+    public record Cached(List<MessageRow> rows, Instant since) {
+    }
+
+    /**
+     * Supplies up to {@code size} messages from {@code fromSequenceNumber} on, in sequence order (within a session
+     * for a {@link com.dutils.servicebusviewer.servicebus.SessionBrowser}); empty at the end.
+     * A source holding resources between pages frees them on {@link #pause()} (the browse is parked) and
+     * {@link #close()} (it is closed or evicted).
+     */
+    public interface PageSource {
+        List<ServiceBusReceivedMessage> fetch(int size, long fromSequenceNumber);
+
+        default void pause() {
+        }
+
+        default void close() {
+        }
+    }
+
+    /** Starts a new browse on the FX thread; pages are handed to {@code sink} on the FX thread in sequence order. */
+    public CompletableFuture<Void> open(String key, ServiceBusReceiverClient receiver, String entityName, Consumer<List<MessageRow>> sink) {
+        return open(key, receiver, entityName, 0, sink);
+    }
+
+    /** Like {@link #open(String, ServiceBusReceiverClient, String, Consumer)}, starting at {@code fromSequenceNumber}. */
+    public CompletableFuture<Void> open(String key, ServiceBusReceiverClient receiver, String entityName, long fromSequenceNumber,
+                                        Consumer<List<MessageRow>> sink) {
+        close();
+        session = new Session(key, (size, from) -> receiver.peekMessages(size, from).stream().toList(), receiver, entityName, sink);
+        session.cursor = fromSequenceNumber;
+        return session.more();
+    }
+
+    /**
+     * Browses any source of pages; {@code receiver} is only used to peek opened rows again and may be null
+     * when the rows can't be peeked individually (sessions).
+     */
+    public CompletableFuture<Void> open(String key, String entityName, ServiceBusReceiverClient receiver, PageSource source, Consumer<List<MessageRow>> sink) {
+        close();
+        session = new Session(key, source, receiver, entityName, sink);
+        return session.more();
+    }
+
+    /**
+     * Takes the parked browse for {@code key} out of the cache and makes it current, or returns null when there
+     * is none. Its rows are returned rather than sent to {@code sink}; pages after them, starting with the
+     * messages enqueued since it was parked, reach {@code sink} through {@link #more()}.
+     */
+    public Cached resume(String key, Consumer<List<MessageRow>> sink) {
+        var cached = parked.remove(key);
+        if (cached == null) return null;
+        parkedBytes -= cached.parkedBytes;
+        parkedSpillBytes -= cached.parkedSpillBytes;
+        close();
+        var rows = new ArrayList<>(cached.snapshot);
+        rows.addAll(cached.undelivered);
+        var since = cached.parkedAt;
+        cached.resume(sink);
+        session = cached;
+        return new Cached(rows, since);
+    }
+
+    /**
+     * Leaves the current browse, keeping it with {@code rows}, the rows its table holds now, for {@link #resume}.
+     * Least recently used browses are closed once the cache is over budget.
+     */
+    public void park(List<MessageRow> rows) {
+        var current = session;
+        session = null;
+        if (current == null) return;
+        current.park(rows);
+        var previous = parked.put(current.key, current);
+        if (previous != null) evict(previous);
+        parkedBytes += current.parkedBytes;
+        parkedSpillBytes += current.parkedSpillBytes;
+        for (Iterator<Session> it = parked.values().iterator();
+             (parkedBytes > parkedLimit || parkedSpillBytes > parkedSpillLimit) && it.hasNext(); ) {
+            var oldest = it.next();
+            it.remove();
+            evict(oldest);
+        }
+    }
+
+    /** Closes the current browse and the parked one for {@code key}, so the next open starts afresh. */
+    public void discard(String key) {
+        close();
+        var cached = parked.remove(key);
+        if (cached != null) evict(cached);
+    }
+
+    private void evict(Session cached) {
+        parkedBytes -= cached.parkedBytes;
+        parkedSpillBytes -= cached.parkedSpillBytes;
+        cached.close();
+    }
+
+    /** Shows the next page, using the read-ahead page when it is already there. */
+    public CompletableFuture<Void> more() {
+        var current = session;
+        return current == null ? CompletableFuture.completedFuture(null) : current.more();
+    }
+
+    /** Looks past the end of the browse again, for messages enqueued since the last page came back empty. */
+    public CompletableFuture<Void> poll() {
+        var current = session;
+        if (current == null) return CompletableFuture.completedFuture(null);
+        current.reopen();
+        return current.more();
+    }
+
+    public boolean isOpen() {
+        return session != null;
+    }
+
+    public boolean isExhausted() {
+        var current = session;
+        return current == null || current.isExhausted();
+    }
+
+    public void close() {
+        var current = session;
+        session = null;
+        if (current != null) current.close();
+    }
+
+    private final class Session {
+        // ArrayList slot per parked row; the rows themselves are counted by the store
+        private static final int SNAPSHOT_ROW_BYTES = 8;
+
+        private final String key;
+        private final PageSource source;
+        private final String entityName;
+        private final FxBatcher<MessageRow> rows;
+        private final MessageStore store;
+        private volatile Consumer<List<MessageRow>> sink;
+        private List<MessageRow> snapshot = List.of();
+        private final List<MessageRow> undelivered = new ArrayList<>();
+        private Instant parkedAt;
+        private long parkedBytes;
+        private long parkedSpillBytes;
+        private long cursor;
+        private int pageSize = Constants.PEEK_SIZE;
+        private boolean exhausted;
+        private CompletableFuture<List<MessageRow>> ahead;
+        private CompletableFuture<Void> delivering;
+
+        Session(String key, PageSource source, ServiceBusReceiverClient receiver, String entityName, Consumer<List<MessageRow>> sink) {
+            this.key = key;
+            this.source = source;
+            this.entityName = entityName;
+            this.sink = sink;
+            // pages landing after the session was parked are kept for its resume; after a close they are dropped
+            this.rows = new FxBatcher<>(batch -> {
+                if (session == this) this.sink.accept(batch);
+                else if (parkedAt != null) undelivered.addAll(batch);
+            });
+            this.store = new MessageStore(receiver, entityName);
+        }
+
+        void park(List<MessageRow> tableRows) {
+            source.pause();
+            snapshot = List.copyOf(tableRows);
+            parkedAt = Instant.now();
+            parkedBytes = store.heapBytes() + (long) SNAPSHOT_ROW_BYTES * snapshot.size();
+            parkedSpillBytes = store.spillBytes();
+        }
+
+        /** Re-opens the end of the browse, so the next {@link #more()} peeks past the last cached sequence number. */
+        synchronized void resume(Consumer<List<MessageRow>> sink) {
+            this.sink = sink;
+            snapshot = List.of();
+            undelivered.clear();
+            parkedAt = null;
+            parkedBytes = 0;
+            parkedSpillBytes = 0;
+            reopen();
+        }
+
+        void close() {
+            source.close();
+            store.close();
+        }
+
+        synchronized void reopen() {
+            exhausted = false;
+        }
+
+        synchronized CompletableFuture<Void> more() {
+            if (delivering != null) return delivering;
+            if (exhausted && ahead == null) return CompletableFuture.completedFuture(null);
+            var page = ahead != null ? ahead : fetch();
+            ahead = null;
+            var delivered = new CompletableFuture<Void>();
+            delivering = delivered;
+            page.whenComplete((messages, e) -> {
+                if (messages != null && !messages.isEmpty()) rows.addAll(messages);
+                rows.then(() -> {
+                    synchronized (this) {
+                        delivering = null;
+                        if (session == this && !exhausted) ahead = fetch();
+                    }
+                    delivered.complete(null);
+                });
+            });
+            return delivered;
+        }
+
+        synchronized boolean isExhausted() {
+            return exhausted && ahead == null;
+        }
+
+        /** Only ever one fetch in flight per session, so the cursor is advanced strictly in order. */
+        private CompletableFuture<List<MessageRow>> fetch() {
+            long from = cursor;
+            int size = pageSize;
+            return CompletableFuture.supplyAsync(() -> store.append(source.fetch(size, from)))
+                    .whenComplete((rows, e) -> {
+                        synchronized (this) {
+                            if (e != null) {
+                                LogUtils.log("Error peeking messages from %s: %s", entityName, e.getMessage());
+                                exhausted = true;
+                            } else if (rows.isEmpty()) {
+                                exhausted = true;
+                            } else {
+                                cursor = rows.get(rows.size() - 1).sequenceNumber() + 1;
+                                pageSize = Math.min(pageSize * 2, Constants.MAX_PEEK_SIZE);
+                            }
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.dutils.servicebusviewer.mgr;
+
+import com.dutils.servicebusviewer.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over the rows of one browse: each lower-cased alphanumeric token maps to the sorted row
+ * indices containing it. Terms are kept sorted, so a prefix query ({@code ord*}) is a range scan.
+ * Tokens are cut to their first {@link #MAX_TOKEN_LENGTH} characters on both sides, so a longer one still matches.
+ * At most {@link Constants#SEARCH_MAX_TERMS} terms are kept; a row whose new terms did not fit makes the index
+ * {@link #isIncomplete() incomplete} until it is removed.
+ * Rows are added in index order by the ingesting thread while the FX thread queries.
+ */
+public class SearchIndex {
+    private static final int MAX_TOKEN_LENGTH = 64;
+    // tree entry, string and postings headers of a new term; each posting is an int
+    private static final int TERM_BYTES = 120;
+
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    private long heapBytes;
+    // last row with a token left out for the term cap, or -1
+    private int lastSkipped = -1;
+
+    /** Adds a row's distinct tokens; rows must be added in increasing index order. */
+    public synchronized void add(int row, Set<String> tokens) {
+        for (var token : tokens) {
+            var postings = terms.get(token);
+            if (postings == null) {
+                if (terms.size() >= Constants.SEARCH_MAX_TERMS) {
+                    lastSkipped = row;
+                    continue;
+                }
+                postings = new Postings();
+                terms.put(token, postings);
+                heapBytes += TERM_BYTES + token.length();
+            }
+            postings.add(row);
+        }
+        heapBytes += 4L * tokens.size();
+    }
+
+    /** True while a row still in the index has tokens that were left out because of the term cap. */
+    public synchronized boolean isIncomplete() {
+        return lastSkipped >= 0;
+    }
+
+    /** Drops the postings of rows before {@code row}, and terms left without any. */
+    public synchronized void removeBefore(int row) {
+        if (lastSkipped < row) lastSkipped = -1;
+        heapBytes = 0;
+        for (var it = terms.entrySet().iterator(); it.hasNext(); ) {
+            var entry = it.next();
+            var postings = entry.getValue();
+            postings.removeBefore(row);
+            if (postings.size == 0) it.remove();
+            else heapBytes += TERM_BYTES + entry.getKey().length() + 4L * postings.size;
+        }
+    }
+
+    /** Rough heap footprint, for cache budgeting. */
+    public synchronized long heapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Rows containing every term of the query. A word ending in {@code *} matches its last token as a prefix;
+     * {@code ORD-1234} is the two terms {@code ord} and {@code 1234}. Returns null for a query without terms.
+     */
+    public BitSet search(String query) {
+        return search(query, 0);
+    }
+
+    /** Like {@link #search(String)}, looking only at rows from {@code fromRow} on. */
+    public synchronized BitSet search(String query, int fromRow) {
+        BitSet result = null;
+        for (var word : query.trim().split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            var tokens = new ArrayList<>(tokenize(word, new LinkedHashSet<>()));
+            for (int i = 0; i < tokens.size(); i++) {
+                var matches = prefix && i == tokens.size() - 1 ? prefixMatches(tokens.get(i), fromRow) : termMatches(tokens.get(i), fromRow);
+                if (result == null) result = matches;
+                else result.and(matches);
+                if (result.isEmpty()) return result;
+            }
+        }
+        return result;
+    }
+
+    private BitSet termMatches(String term, int fromRow) {
+        var bits = new BitSet();
+        var postings = terms.get(term);
+        if (postings != null) postings.addTo(bits, fromRow);
+        return bits;
+    }
+
+    private BitSet prefixMatches(String prefix, int fromRow) {
+        var bits = new BitSet();
+        terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values().forEach(p -> p.addTo(bits, fromRow));
+        return bits;
+    }
+
+    /** Adds the lower-cased alphanumeric runs of {@code text} to {@code tokens}, cut to {@link #MAX_TOKEN_LENGTH}. */
+    public static Set<String> tokenize(String text, Set<String> tokens) {
+        if (text == null) return tokens;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) {
+                tokens.add(text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Postings {
+        private int[] rows = new int[2];
+        private int size;
+
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row) return;
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+
+        void removeBefore(int row) {
+            int cut = Arrays.binarySearch(rows, 0, size, row);
+            if (cut < 0) cut = -cut - 1;
+            if (cut == 0) return;
+            size -= cut;
+            rows = Arrays.copyOfRange(rows, cut, cut + Math.max(size, 2));
+        }
+
+        void addTo(BitSet bits, int fromRow) {
+            int from = fromRow == 0 ? 0 : Arrays.binarySearch(rows, 0, size, fromRow);
+            if (from < 0) from = -from - 1;
+            for (int i = from; i < size; i++) bits.set(rows[i]);
+        }
+    }
+}
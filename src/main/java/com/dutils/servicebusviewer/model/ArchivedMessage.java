@@ -0,0 +1,11 @@
+package com.dutils.servicebusviewer.model;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One record of an archive export: the resendable message plus the broker-assigned fields that only describe
+ * where it came from, kept so an archive can be searched and triaged without the entity.
+ */
+public record ArchivedMessage(long sequenceNumber, OffsetDateTime enqueuedTime, long deliveryCount,
+                              String deadLetterReason, String deadLetterErrorDescription, ServiceBusMessageData message) {
+}
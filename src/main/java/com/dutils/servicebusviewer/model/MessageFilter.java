@@ -0,0 +1,41 @@
+package com.dutils.servicebusviewer.model;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Matches messages on subject, an application property and an enqueued-time range; null fields match anything.
+ * A property name without a value matches any message that has the property.
+ */
+public record MessageFilter(String subject, String propertyName, String propertyValue,
+                            OffsetDateTime enqueuedFrom, OffsetDateTime enqueuedTo) implements Predicate<ServiceBusReceivedMessage> {
+
+    @Override
+    public boolean test(ServiceBusReceivedMessage msg) {
+        if (subject != null && !subject.equals(msg.getSubject())) return false;
+        if (propertyName != null) {
+            Object value = msg.getApplicationProperties().get(propertyName);
+            if (value == null || (propertyValue != null && !propertyValue.equals(String.valueOf(value)))) return false;
+        }
+        var enqueued = msg.getEnqueuedTime();
+        if (enqueuedFrom != null && (enqueued == null || enqueued.isBefore(enqueuedFrom))) return false;
+        return enqueuedTo == null || (enqueued != null && enqueued.isBefore(enqueuedTo));
+    }
+
+    public boolean isEmpty() {
+        return subject == null && propertyName == null && enqueuedFrom == null && enqueuedTo == null;
+    }
+
+    @Override
+    public String toString() {
+        var parts = new ArrayList<String>();
+        if (subject != null) parts.add("subject=" + subject);
+        if (propertyName != null) parts.add(propertyName + "=" + (propertyValue == null ? "*" : propertyValue));
+        if (enqueuedFrom != null) parts.add("enqueued>=" + enqueuedFrom);
+        if (enqueuedTo != null) parts.add("enqueued<" + enqueuedTo);
+        return parts.isEmpty() ? "all messages" : String.join(", ", parts);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dutils.servicebusviewer.model;
+
+import com.azure.core.amqp.models.AmqpMessageBodyType;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.dutils.servicebusviewer.mgr.MessageStore;
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A row of a message table: a view over row {@code index} of its {@link MessageStore}, which computed the columns
+ * once when the message was ingested (off the FX thread) and keeps them in primitive arrays. The rest of the message
+ * stays in the store's spill. The row is its own cell value, so cell value factories hand it out as is instead of
+ * wrapping each value.
+ */
+public record MessageRow(MessageStore store, int index) implements ObservableValue<MessageRow> {
+
+    public long sequenceNumber() {
+        return store.sequenceNumber(index);
+    }
+
+    public String messageId() {
+        return store.messageId(index);
+    }
+
+    public String subject() {
+        return store.subject(index);
+    }
+
+    public int deliveryCount() {
+        return store.deliveryCount(index);
+    }
+
+    public int bodySize() {
+        return store.bodySize(index);
+    }
+
+    public AmqpMessageBodyType bodyType() {
+        return store.bodyType(index);
+    }
+
+    public String enqueuedTime() {
+        return store.enqueuedTime(index);
+    }
+
+    /** The full message, peeked again from the entity; completes with null once it has been settled. */
+    public CompletableFuture<ServiceBusReceivedMessage> rehydrate() {
+        return store.rehydrate(sequenceNumber());
+    }
+
+    /** The spilled copy of the message, or null when it was over the spill budget. */
+    public ServiceBusMessageData data() {
+        return store.data(index);
+    }
+
+    @Override
+    public MessageRow getValue() {
+        return this;
+    }
+
+    // immutable, so there is never anything to notify
+    @Override
+    public void addListener(ChangeListener<? super MessageRow> listener) {
+    }
+
+    @Override
+    public void removeListener(ChangeListener<? super MessageRow> listener) {
+    }
+
+    @Override
+    public void addListener(InvalidationListener listener) {
+    }
+
+    @Override
+    public void removeListener(InvalidationListener listener) {
+    }
+}
@@ -22,6 +22,8 @@ public class ServiceBusMessageData {
     private OffsetDateTime scheduledEnqueueTime;
     private Map<String, Object> applicationProperties = new HashMap<>();
     private String body;
+    // original body bytes, only when the body text does not encode back to them as UTF-8
+    private byte[] rawBody;
 
     public ServiceBusMessageData() {}
 
@@ -142,6 +144,14 @@ public class ServiceBusMessageData {
         this.body = body;
     }
 
+    public byte[] getRawBody() {
+        return rawBody;
+    }
+
+    public void setRawBody(byte[] rawBody) {
+        this.rawBody = rawBody;
+    }
+
 
     public ServiceBusMessageData addProperty(String key, Object value) {
         this.applicationProperties.put(key, value);
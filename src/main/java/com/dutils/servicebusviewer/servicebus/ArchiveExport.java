@@ -0,0 +1,80 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.dutils.servicebusviewer.model.ArchivedMessage;
+import com.dutils.servicebusviewer.utils.ArchiveWriter;
+import com.dutils.servicebusviewer.utils.MapperUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+/**
+ * Exports a whole entity (or its DLQ) into one {@link ArchiveWriter} file straight from a {@link PeekScan}.
+ * Each peeked page becomes one archive block, serialized and compressed on a pool sized to the cores while the
+ * scan peeks on; blocks are appended in page order. At most two blocks per core are in flight, so memory stays
+ * bounded however large the entity is. A cancelled scan leaves a valid archive of what was read; a failed peek, encode
+ * or write fails the export and removes the partial file.
+ */
+public class ArchiveExport {
+    private static final int REPORT_INTERVAL_SEC = 2;
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final boolean isDlq;
+    private final Path file;
+    private final ProgressMeter meter;
+
+    public ArchiveExport(ServiceBusManager mgr, Entity entity, boolean isDlq, Path file, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.isDlq = isDlq;
+        this.file = file;
+        this.meter = meter;
+    }
+
+    /** Runs the export and returns the number of messages written. */
+    public long run() throws IOException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        var pending = new ArrayDeque<CompletableFuture<ArchiveWriter.Encoded>>();
+        try (var writer = new ArchiveWriter(file);
+             var pool = Executors.newFixedThreadPool(workers)) {
+            var scan = new PeekScan(mgr, entity, isDlq, meter);
+            scan.run(page -> {
+                pending.add(CompletableFuture.supplyAsync(() -> encode(page), pool));
+                while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() > workers * 2)) {
+                    append(writer, pending.poll());
+                }
+            }, REPORT_INTERVAL_SEC, () -> {});
+            if (scan.failure() != null) throw new IOException("Export stopped: " + scan.failure().getMessage(), scan.failure());
+            while (!pending.isEmpty()) append(writer, pending.poll());
+            writer.finish();
+            return writer.count();
+        }
+    }
+
+    private static void append(ArchiveWriter writer, CompletableFuture<ArchiveWriter.Encoded> block) {
+        try {
+            writer.append(block.join());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ArchiveWriter.Encoded encode(List<ServiceBusReceivedMessage> page) {
+        var records = page.stream().map(msg -> new ArchivedMessage(msg.getSequenceNumber(), msg.getEnqueuedTime(),
+                msg.getDeliveryCount(), msg.getDeadLetterReason(), msg.getDeadLetterErrorDescription(),
+                MapperUtils.toServiceBusMessageData(msg, null))).toList();
+        try {
+            return ArchiveWriter.encode(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import com.azure.messaging.servicebus.ServiceBusMessageBatch;
+import com.azure.messaging.servicebus.ServiceBusSenderClient;
+
+import java.util.List;
+
+public class Batches {
+
+    /** A send that failed after the first {@link #sent()} messages of the list had been accepted. */
+    public static class PartialSendException extends RuntimeException {
+        private final int sent;
+
+        PartialSendException(int sent, RuntimeException cause) {
+            super(cause.getMessage(), cause);
+            this.sent = sent;
+        }
+
+        public int sent() {
+            return sent;
+        }
+    }
+
+    /**
+     * Packs {@code messages} into as few {@link ServiceBusMessageBatch}es as the size limit allows and sends them in order.
+     * A message too large for an empty batch is sent on its own so the service reports the real error.
+     * A failure is thrown as {@link PartialSendException}, so a retry can skip the messages already sent.
+     */
+    public static void sendBatched(ServiceBusSenderClient sender, List<ServiceBusMessage> messages) {
+        int sent = 0;
+        try {
+            ServiceBusMessageBatch batch = sender.createMessageBatch();
+            for (var message : messages) {
+                if (batch.tryAddMessage(message)) continue;
+                if (batch.getCount() > 0) {
+                    sender.sendMessages(batch);
+                    sent += batch.getCount();
+                }
+                batch = sender.createMessageBatch();
+                if (!batch.tryAddMessage(message)) {
+                    sender.sendMessage(message);
+                    sent++;
+                }
+            }
+            if (batch.getCount() > 0) sender.sendMessages(batch);
+        } catch (RuntimeException e) {
+            throw new PartialSendException(sent, e);
+        }
+    }
+
+    /** The number of leading messages a failed {@link #sendBatched} call did send. */
+    public static int sentBefore(Throwable e) {
+        for (var t = e; t != null; t = t.getCause()) {
+            if (t instanceof PartialSendException partial) return partial.sent();
+        }
+        return 0;
+    }
+}
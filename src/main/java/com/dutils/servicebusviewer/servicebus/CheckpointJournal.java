@@ -0,0 +1,133 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.dutils.servicebusviewer.utils.LongHashSet;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only record of the sequence numbers a bulk operation has sent and completed, kept in
+ * {@code ~/.dutils/journal} so an interrupted run can be resumed without sending anything twice.
+ * Each record is a type byte and a sequence number. SENT records are forced to disk before the
+ * sources are completed; COMPLETED records are buffered and forced in groups. A COMPLETED record lost
+ * in a crash only means the message is completed without a resend on the next run.
+ * The journal is deleted when the operation finishes cleanly.
+ */
+public class CheckpointJournal implements AutoCloseable {
+    static final Path JOURNAL_DIR = Paths.get(System.getProperty("user.home"), ".dutils", "journal");
+    private static final byte SENT = 'S';
+    private static final byte COMPLETED = 'C';
+    private static final int RECORD_SIZE = 1 + Long.BYTES;
+    private static final int FLUSH_RECORDS = 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(FLUSH_RECORDS * RECORD_SIZE);
+    private final LongHashSet sent = new LongHashSet();
+    private long completed;
+    private final long recovered;
+
+    // package-private so tests can open a journal outside the user's home
+    CheckpointJournal(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+        this.recovered = load();
+    }
+
+    public static CheckpointJournal open(String namespace, String operation, Entity entity, boolean isDlq) throws IOException {
+        Files.createDirectories(JOURNAL_DIR);
+        var name = String.join("_", namespace, operation, entity.name(), entity.sub(), isDlq ? "dlq" : "active");
+        return new CheckpointJournal(JOURNAL_DIR.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + ".journal"));
+    }
+
+    /** Number of records found from a previous, unfinished run. */
+    public long recovered() {
+        return recovered;
+    }
+
+    /** Sent in an earlier run (or earlier in this one) but not necessarily completed. */
+    public synchronized boolean isSent(long sequenceNumber) {
+        return sent.contains(sequenceNumber);
+    }
+
+    public synchronized int sentCount() {
+        return sent.size();
+    }
+
+    public synchronized long completedCount() {
+        return completed;
+    }
+
+    /** Records a send the service has accepted; returns once the records are on disk. */
+    public synchronized void markSent(long[] sequenceNumbers) throws IOException {
+        for (long seq : sequenceNumbers) {
+            append(SENT, seq);
+            sent.add(seq);
+        }
+        flush();
+    }
+
+    public synchronized void markCompleted(long sequenceNumber) throws IOException {
+        append(COMPLETED, sequenceNumber);
+        completed++;
+    }
+
+    /** Flushes and deletes the journal; only call when the operation finished without leaving work behind. */
+    public synchronized void finish() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        flush();
+        channel.close();
+    }
+
+    private void append(byte type, long seq) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) flush();
+        buffer.put(type).putLong(seq);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+        channel.force(false);
+    }
+
+    /** Rebuilds the index and drops a partially written trailing record. */
+    private long load() throws IOException {
+        long records = channel.size() / RECORD_SIZE;
+        var read = ByteBuffer.allocate(FLUSH_RECORDS * RECORD_SIZE);
+        long position = 0, end = records * RECORD_SIZE;
+        while (position < end) {
+            read.clear().limit((int) Math.min(read.capacity(), end - position));
+            while (read.hasRemaining()) {
+                int n = channel.read(read, position + read.position());
+                if (n < 0) break;
+            }
+            read.flip();
+            while (read.remaining() >= RECORD_SIZE) {
+                byte type = read.get();
+                long seq = read.getLong();
+                if (type == SENT) sent.add(seq);
+                else if (type == COMPLETED) completed++;
+            }
+            position += read.limit();
+        }
+        channel.truncate(end);
+        channel.position(end);
+        return records;
+    }
+}
@@ -0,0 +1,152 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusException;
+import com.azure.messaging.servicebus.ServiceBusFailureReason;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.azure.messaging.servicebus.models.DeadLetterOptions;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.LongHashSet;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static com.azure.messaging.servicebus.models.ServiceBusReceiveMode.PEEK_LOCK;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Dead-letters every active message of an entity with several PEEK_LOCK receivers.
+ * Prefetch is off so no lock starts ticking before a worker owns the message, and each received message
+ * gets automatic lock renewal until it is settled. Messages whose lock is lost anyway are counted and left in place.
+ */
+public class DeadLetterEngine {
+    private static final int RECEIVE_BATCH = 100;
+    private static final Duration RECEIVE_WAIT = Duration.ofSeconds(2);
+    private static final Duration MAX_LOCK_RENEWAL = Duration.ofMinutes(5);
+    private static final int MAX_EMPTY_RECEIVES = 2;
+    private static final int MAX_DEAD_LETTER_ATTEMPTS = 5;
+    private static final int REPORT_INTERVAL_SEC = 2;
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final int receivers;
+    private final DeadLetterOptions options;
+    private final ProgressMeter meter;
+    private final LongHashSet lostLocks = new LongHashSet();
+    private final AtomicLong failed = new AtomicLong();
+    private RateGovernor governor;
+
+    public DeadLetterEngine(ServiceBusManager mgr, Entity entity, int receivers, DeadLetterOptions options, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.receivers = receivers;
+        this.options = options;
+        this.meter = meter;
+    }
+
+    public long run() {
+        try {
+            meter.setTotal(mgr.getMessageCount(entity.type(), entity.name(), entity.sub(), false));
+        } catch (Exception e) {
+            LogUtils.log("Unable to read message count of %s: %s", entity.name(), e.getMessage());
+        }
+        governor = RateGovernor.of(mgr.getNamespace(), entity);
+        Throwable failure;
+        try (var executor = newVirtualThreadPerTaskExecutor()) {
+            var workers = IntStream.range(0, receivers)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> worker(executor), executor))
+                    .toArray(CompletableFuture[]::new);
+            failure = meter.await(CompletableFuture.allOf(workers), REPORT_INTERVAL_SEC,
+                    () -> LogUtils.progress("Dead-lettering %s: %s, %d locks lost (%s)",
+                            entity.name(), meter.summary(), lostLockCount(), governor.describe()));
+        }
+        if (lostLockCount() > 0) {
+            LogUtils.log("%d message locks were lost while dead-lettering %s; those messages are still active", lostLockCount(), entity.name());
+        }
+        if (failed.get() > 0) {
+            LogUtils.log("%d messages in %s could not be dead-lettered", failed.get(), entity.name());
+        }
+        if (failure != null) {
+            throw new IllegalStateException(String.format("Dead-lettering %s stopped after %d messages: %s",
+                    entity.name(), meter.count(), failure.getMessage()), failure);
+        }
+        return meter.count();
+    }
+
+    public int lostLockCount() {
+        synchronized (lostLocks) {
+            return lostLocks.size();
+        }
+    }
+
+    private void worker(ExecutorService executor) {
+        try (var receiver = mgr.newReceiver(entity.type(), entity.name(), entity.sub(), PEEK_LOCK, false, 0)) {
+            int empty = 0;
+            while (!meter.isCancelled() && empty < MAX_EMPTY_RECEIVES) {
+                List<ServiceBusReceivedMessage> messages;
+                try {
+                    messages = receiver.receiveMessages(RECEIVE_BATCH, RECEIVE_WAIT).stream().toList();
+                } catch (Exception e) {
+                    if (governor.onError(e)) continue;
+                    throw e;
+                }
+                if (messages.isEmpty()) {
+                    empty++;
+                    continue;
+                }
+                empty = 0;
+                messages.forEach(msg -> receiver.renewMessageLock(msg, MAX_LOCK_RENEWAL, e -> onRenewalError(msg, e)));
+                governor.acquire(messages.size());
+                CompletableFuture.allOf(messages.stream()
+                        .map(msg -> CompletableFuture.runAsync(() -> deadLetter(receiver, msg), executor))
+                        .toArray(CompletableFuture[]::new)).join();
+            }
+        } catch (Exception e) {
+            LogUtils.log("Error dead-lettering messages of %s: %s", entity.name(), e.getMessage());
+        }
+    }
+
+    /** Dead-letters one message, trying again after the governor's back-off while the service throttles. */
+    private void deadLetter(ServiceBusReceiverClient receiver, ServiceBusReceivedMessage msg) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                receiver.deadLetter(msg, options);
+                meter.add(1);
+                return;
+            } catch (Exception e) {
+                if (isLockLost(e)) {
+                    lockLost(msg);
+                    return;
+                }
+                if (attempt >= MAX_DEAD_LETTER_ATTEMPTS || !governor.onError(e)) {
+                    failed.incrementAndGet();
+                    LogUtils.log("Error dead-lettering message %d: %s", msg.getSequenceNumber(), e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void onRenewalError(ServiceBusReceivedMessage msg, Throwable e) {
+        if (isLockLost(e)) lockLost(msg);
+    }
+
+    private void lockLost(ServiceBusReceivedMessage msg) {
+        synchronized (lostLocks) {
+            lostLocks.add(msg.getSequenceNumber());
+        }
+    }
+
+    private static boolean isLockLost(Throwable e) {
+        for (var t = e; t != null; t = t.getCause()) {
+            if (t instanceof ServiceBusException sbe && sbe.getReason() == ServiceBusFailureReason.MESSAGE_LOCK_LOST) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Groups a whole dead-letter queue by reason, error description and source, with a count, the first and last
+ * enqueue time and a few sample sequence numbers per group. Descriptions usually embed ids, so GUIDs and numbers are
+ * masked before grouping; at most {@link Constants#TRIAGE_MAX_GROUPS} groups are kept and later ones are counted
+ * in a single "other" group, so memory stays bounded however large the DLQ is.
+ */
+public class DlqTriage {
+    private static final int REPORT_INTERVAL_SEC = 2;
+    private static final int SAMPLES = 5;
+    private static final int MAX_DESCRIPTION_CHARS = 200;
+    private static final Pattern GUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+    private static final Key OTHER = new Key("(other)", "(groups over TRIAGE_MAX_GROUPS)", "");
+
+    /** One row of the report; {@code samples} are sequence numbers of messages in the group. */
+    public record Group(String reason, String description, String source, long count,
+                        OffsetDateTime firstSeen, OffsetDateTime lastSeen, long[] samples) {
+    }
+
+    private record Key(String reason, String description, String source) {
+    }
+
+    private static final class Stats {
+        long count;
+        OffsetDateTime first;
+        OffsetDateTime last;
+        final long[] samples = new long[SAMPLES];
+
+        /** Reservoir sampling, so the samples are spread over the whole DLQ rather than its head. */
+        void add(ServiceBusReceivedMessage msg, Random random) {
+            long n = count++;
+            if (n < SAMPLES) samples[(int) n] = msg.getSequenceNumber();
+            else {
+                long slot = (long) (random.nextDouble() * (n + 1));
+                if (slot < SAMPLES) samples[(int) slot] = msg.getSequenceNumber();
+            }
+            var time = msg.getEnqueuedTime();
+            if (time == null) return;
+            if (first == null || time.isBefore(first)) first = time;
+            if (last == null || time.isAfter(last)) last = time;
+        }
+    }
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final ProgressMeter meter;
+    private final Map<Key, Stats> groups = new HashMap<>();
+    private final Random random = new Random();
+
+    public DlqTriage(ServiceBusManager mgr, Entity entity, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.meter = meter;
+    }
+
+    /** Scans the DLQ, handing the groups so far to {@code onUpdate} while it runs and once at the end. */
+    public List<Group> run(Consumer<List<Group>> onUpdate) {
+        var scan = new PeekScan(mgr, entity, true, meter);
+        scan.run(this::record, REPORT_INTERVAL_SEC, () -> onUpdate.accept(groups()));
+        var result = groups();
+        onUpdate.accept(result);
+        scan.throwIfFailed();
+        return result;
+    }
+
+    private synchronized void record(List<ServiceBusReceivedMessage> messages) {
+        for (var msg : messages) {
+            var key = new Key(text(msg.getDeadLetterReason()), mask(msg.getDeadLetterErrorDescription()),
+                    text(msg.getDeadLetterSource()));
+            var stats = groups.get(key);
+            if (stats == null) {
+                if (groups.size() >= Constants.TRIAGE_MAX_GROUPS) key = OTHER;
+                stats = groups.computeIfAbsent(key, k -> new Stats());
+            }
+            stats.add(msg, random);
+        }
+    }
+
+    /** Groups by count, largest first. */
+    public synchronized List<Group> groups() {
+        var result = new ArrayList<Group>(groups.size());
+        groups.forEach((key, stats) -> result.add(new Group(key.reason(), key.description(), key.source(), stats.count,
+                stats.first, stats.last, Arrays.copyOf(stats.samples, (int) Math.min(stats.count, SAMPLES)))));
+        result.sort(Comparator.comparingLong(Group::count).reversed());
+        return result;
+    }
+
+    private static String text(String value) {
+        return value == null || value.isBlank() ? "(none)" : value;
+    }
+
+    private static String mask(String description) {
+        if (description == null || description.isBlank()) return "(none)";
+        var masked = NUMBER.matcher(GUID.matcher(description).replaceAll("<guid>")).replaceAll("#");
+        return masked.length() > MAX_DESCRIPTION_CHARS ? masked.substring(0, MAX_DESCRIPTION_CHARS) + "..." : masked;
+    }
+}
@@ -0,0 +1,198 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.core.amqp.models.AmqpMessageBodyType;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.dutils.servicebusviewer.utils.BodyCache;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.LongHashSet;
+import com.dutils.servicebusviewer.utils.LongLongMap;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.Murmur64;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpSequence;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.codec.DroppingWritableBuffer;
+import org.apache.qpid.proton.codec.WritableBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Finds messages with identical bodies across a whole entity (or its DLQ). Each body is hashed with
+ * {@link Murmur64} (the hash mixed with the body length) and the first sequence number per hash goes to a fixed-size
+ * {@link LongLongMap}. When a second message hits a known hash the first one is peeked again and its body kept with the
+ * cluster; a message only joins the cluster when its bytes equal that body, so a hash collision never reports (or
+ * deletes) a distinct payload. AMQP value and sequence bodies are compared by their AMQP encoding, not by their text.
+ * Three quarters of {@link Constants#DUPLICATE_SCAN_MEMORY_MB} go to the map and the rest to duplicate sequence
+ * numbers and first bodies; once either is full, further bodies are only counted, so memory stays fixed however long
+ * the entity is.
+ */
+public class DuplicateScan {
+    private static final int REPORT_INTERVAL_SEC = 2;
+    private static final int PREVIEW_CHARS = 120;
+    private static final long SEED = 0x5EEDL;
+    // duplicates copied into progress updates; the final result carries all of them
+    private static final int PROGRESS_DUPLICATES = 20;
+
+    /**
+     * Messages sharing one body: {@code count} includes the earliest one, {@code duplicates} are the sequence numbers of
+     * the others that fitted in the budget.
+     */
+    public record Cluster(long firstSequence, int bodySize, String preview, long count, long[] duplicates) {
+    }
+
+    private static final class Members {
+        final long first;
+        // the first message's body, or null when it could not be peeked again and nothing can be verified against it
+        final byte[] firstBody;
+        final String preview;
+        long[] duplicates = new long[4];
+        int size;
+        long untracked;
+
+        Members(long first, byte[] firstBody, String preview) {
+            this.first = first;
+            this.firstBody = firstBody;
+            this.preview = preview;
+        }
+    }
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final boolean isDlq;
+    private final ProgressMeter meter;
+    private final LongLongMap firstByHash;
+    private final long maxTracked;
+    private final Map<Long, Members> clusters = new HashMap<>();
+    private long tracked;
+    private long unhashed;
+    // messages whose hash matched a cluster but whose body did not, or could not be compared
+    private long unverified;
+
+    public DuplicateScan(ServiceBusManager mgr, Entity entity, boolean isDlq, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.isDlq = isDlq;
+        this.meter = meter;
+        long budget = Constants.DUPLICATE_SCAN_MEMORY_MB * 1024L * 1024L;
+        this.firstByHash = LongLongMap.withBudget(budget / 4 * 3);
+        this.maxTracked = budget / 4 / Long.BYTES;
+    }
+
+    /** Scans the entity, handing the clusters so far to {@code onUpdate} while it runs and once at the end. */
+    public List<Cluster> run(Consumer<List<Cluster>> onUpdate) {
+        var scan = new PeekScan(mgr, entity, isDlq, meter);
+        scan.run(this::record, REPORT_INTERVAL_SEC, () -> onUpdate.accept(clusters(PROGRESS_DUPLICATES)));
+        if (unhashed > 0) {
+            LogUtils.log("Duplicate scan of %s ran out of memory budget (DUPLICATE_SCAN_MEMORY_MB); %d messages were not checked",
+                    entity.path(), unhashed);
+        }
+        if (unverified > 0) {
+            LogUtils.log("Duplicate scan of %s: %d messages shared a hash with a cluster but not its bytes (or its first "
+                    + "message was gone) and were not counted as duplicates", entity.path(), unverified);
+        }
+        var result = clusters(Integer.MAX_VALUE);
+        onUpdate.accept(result);
+        scan.throwIfFailed();
+        return result;
+    }
+
+    private void record(List<ServiceBusReceivedMessage> messages) {
+        for (var msg : messages) {
+            var body = bodyBytes(msg);
+            long key = Murmur64.hash(body, SEED) ^ (body.length * 0x9E3779B97F4A7C15L);
+            if (key == 0) key = 1;
+            long seq = msg.getSequenceNumber();
+            long first = firstByHash.get(key, -1);
+            if (first < 0) {
+                if (!firstByHash.put(key, seq)) unhashed++;
+                continue;
+            }
+            Members members;
+            synchronized (this) {
+                members = clusters.get(key);
+                if (tracked >= maxTracked) {
+                    if (members != null && Arrays.equals(body, members.firstBody)) members.untracked++;
+                    else unhashed++;
+                    continue;
+                }
+            }
+            if (members == null) {
+                // pages are recorded one at a time, so nobody else creates this cluster meanwhile
+                var firstBody = peekBody(first);
+                members = new Members(first, firstBody, preview(msg));
+                synchronized (this) {
+                    clusters.put(key, members);
+                    if (firstBody != null) tracked += (firstBody.length + Long.BYTES - 1) / Long.BYTES;
+                }
+            }
+            if (!Arrays.equals(body, members.firstBody)) {
+                unverified++;
+                continue;
+            }
+            synchronized (this) {
+                if (members.size == members.duplicates.length) members.duplicates = Arrays.copyOf(members.duplicates, members.size * 2);
+                members.duplicates[members.size++] = seq;
+                tracked++;
+            }
+        }
+    }
+
+    /** Clusters by size, largest first, each with up to {@code maxDuplicates} duplicate sequence numbers. */
+    private synchronized List<Cluster> clusters(int maxDuplicates) {
+        var result = new ArrayList<Cluster>(clusters.size());
+        clusters.values().stream().filter(m -> m.size + m.untracked > 0).forEach(m -> result.add(new Cluster(m.first,
+                m.firstBody.length, m.preview, 1 + m.size + m.untracked, Arrays.copyOf(m.duplicates, Math.min(m.size, maxDuplicates)))));
+        result.sort(Comparator.comparingLong(Cluster::count).reversed());
+        return result;
+    }
+
+    /** Every tracked duplicate, leaving the earliest message of each cluster in place. */
+    public static LongHashSet duplicatesOf(List<Cluster> clusters) {
+        var targets = new LongHashSet();
+        for (var cluster : clusters) {
+            for (long seq : cluster.duplicates()) targets.add(seq);
+        }
+        return targets;
+    }
+
+    /** The first message of a cluster, peeked again by sequence number; null when it is no longer there. */
+    private byte[] peekBody(long seq) {
+        try {
+            var msg = mgr.getReceiver(entity.type(), entity.name(), entity.sub(), null, isDlq).peekMessage(seq);
+            return msg != null && msg.getSequenceNumber() == seq ? bodyBytes(msg) : null;
+        } catch (Exception e) {
+            LogUtils.log("Unable to peek message %d of %s to verify duplicates: %s", seq, entity.path(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The body's bytes: the data sections as sent, or the AMQP encoding of a value or sequence body, so bodies that
+     * only decode to the same text (a string and a number, say) differ.
+     */
+    private static byte[] bodyBytes(ServiceBusReceivedMessage msg) {
+        var body = msg.getRawAmqpMessage().getBody();
+        if (body.getBodyType() == AmqpMessageBodyType.DATA) return msg.getBody().toBytes();
+        var message = Proton.message();
+        message.setBody(body.getBodyType() == AmqpMessageBodyType.SEQUENCE ? new AmqpSequence(body.getSequence()) : new AmqpValue(body.getValue()));
+        var size = new DroppingWritableBuffer();
+        message.encode(size);
+        var buffer = WritableBuffer.ByteBufferWrapper.allocate(size.position());
+        message.encode(buffer);
+        return buffer.byteBuffer().array();
+    }
+
+    private static String preview(ServiceBusReceivedMessage msg) {
+        var text = BodyCache.peek(msg).text();
+        var flat = (text.length() > PREVIEW_CHARS ? text.substring(0, PREVIEW_CHARS) + "..." : text).replaceAll("\\s+", " ");
+        return flat.trim();
+    }
+}
@@ -0,0 +1,78 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.dutils.servicebusviewer.model.MessageFilter;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.LongHashSet;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+/**
+ * Deletes or dead-letters only the messages matching a {@link MessageFilter}.
+ * A peek scan, which takes no locks and leaves delivery counts alone, collects the matching sequence numbers.
+ * {@link SelectiveOperation} then settles exactly those in a single pass, locking no further than the last match
+ * and holding at most {@link com.dutils.servicebusviewer.utils.Constants#SELECTIVE_MAX_LOCKS} non-matching messages,
+ * so each of those gets at most one extra delivery count. Matches it could not reach are counted by {@link #leftBehind()}.
+ */
+public class FilteredOperation {
+    private static final int PEEK_PAGE = 250;
+    private static final long REPORT_INTERVAL_MS = 2000;
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final boolean isDlq;
+    private final SelectiveOperation.Action action;
+    private final MessageFilter filter;
+    private final ProgressMeter meter;
+    private long leftBehind;
+
+    public FilteredOperation(ServiceBusManager mgr, Entity entity, boolean isDlq, SelectiveOperation.Action action,
+                             MessageFilter filter, ProgressMeter meter) {
+        if (action == SelectiveOperation.Action.RESTORE) {
+            throw new IllegalArgumentException("Filtered restore is not supported");
+        }
+        this.mgr = mgr;
+        this.entity = entity;
+        this.isDlq = isDlq;
+        this.action = action;
+        this.filter = filter;
+        this.meter = meter;
+    }
+
+    public long run() {
+        var targets = scan();
+        if (targets.isEmpty() || meter.isCancelled()) return 0;
+        LogUtils.log("Found %d messages matching %s in %s", targets.size(), filter, entity.path());
+        meter.setTotal(targets.size());
+        var operation = new SelectiveOperation(mgr, entity, isDlq, action, targets, meter);
+        operation.run();
+        leftBehind = operation.leftBehind();
+        return meter.count();
+    }
+
+    /** Matching messages the run did not settle. */
+    public long leftBehind() {
+        return leftBehind;
+    }
+
+    private LongHashSet scan() {
+        var receiver = mgr.getReceiver(entity.type(), entity.name(), entity.sub(), null, isDlq);
+        var governor = RateGovernor.of(mgr.getNamespace(), entity);
+        var matches = new LongHashSet();
+        long next = 0, scanned = 0, lastReport = System.currentTimeMillis();
+        while (!meter.isCancelled()) {
+            var page = receiver.peekMessages(PEEK_PAGE, next).stream().toList();
+            if (page.isEmpty()) break;
+            governor.acquire(page.size());
+            for (var msg : page) {
+                if (filter.test(msg)) matches.add(msg.getSequenceNumber());
+            }
+            scanned += page.size();
+            next = page.get(page.size() - 1).getSequenceNumber() + 1;
+            if (System.currentTimeMillis() - lastReport >= REPORT_INTERVAL_MS) {
+                lastReport = System.currentTimeMillis();
+                LogUtils.progress("Scanning %s: %,d scanned, %,d matching", entity.path(), scanned, matches.size());
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,80 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Position of an import in its source (files of a folder in name order, or records of an archive), kept next to the
+ * {@link CheckpointJournal}s so a rerun of the same import into the same entity continues where the last one stopped.
+ * Everything before the position has been sent. A folder import also records the name of the last file sent, since
+ * files added or removed between runs shift the positions. The record is forced to disk each time it advances.
+ * Deleted when the import finishes cleanly.
+ */
+public class ImportCheckpoint implements AutoCloseable {
+    private final Path file;
+    private final FileChannel channel;
+    private long position;
+    private String name;
+
+    private ImportCheckpoint(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+        if (channel.size() >= Long.BYTES) {
+            var buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) break;
+            }
+            buffer.flip();
+            position = buffer.getLong();
+            if (buffer.hasRemaining()) name = StandardCharsets.UTF_8.decode(buffer).toString();
+        }
+    }
+
+    public static ImportCheckpoint open(String namespace, String destination, Path source) throws IOException {
+        Files.createDirectories(CheckpointJournal.JOURNAL_DIR);
+        var path = source.toAbsolutePath().normalize();
+        var name = String.join("_", namespace, "import", destination, path.getFileName() + "-" + Integer.toHexString(path.hashCode()));
+        return new ImportCheckpoint(CheckpointJournal.JOURNAL_DIR.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + ".position"));
+    }
+
+    /** Inputs at the start of the source that were already sent. */
+    public synchronized long position() {
+        return position;
+    }
+
+    /** Name of the last input sent, for sources whose inputs are named; null when there is none. */
+    public synchronized String name() {
+        return name;
+    }
+
+    /** Moves the position forward; {@code name} is the last input before it, or null. */
+    public synchronized void advance(long position, String name) throws IOException {
+        if (position <= this.position) return;
+        this.position = position;
+        this.name = name;
+        var bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.allocate(Long.BYTES + bytes.length).putLong(position).put(bytes).flip();
+        while (buffer.hasRemaining()) channel.write(buffer, buffer.position());
+        channel.truncate(buffer.limit());
+        channel.force(false);
+    }
+
+    /** Deletes the checkpoint; only call when the whole source was sent. */
+    public synchronized void finish() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) channel.close();
+    }
+}
@@ -0,0 +1,282 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.dutils.servicebusviewer.config.ApplicationContext;
+import com.dutils.servicebusviewer.model.ArchivedMessage;
+import com.dutils.servicebusviewer.model.ServiceBusMessageData;
+import com.dutils.servicebusviewer.utils.ArchiveReader;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.JsonFileUtil;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.MapperUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Sends the messages of a folder of saved {@link ServiceBusMessageData} JSON files, or of an {@link ArchiveReader}
+ * archive, to a queue or topic. The source is cut into chunks (a run of files, or one archive block) that are read
+ * and parsed on a pool sized to the cores, at most two per core ahead of the sends; parsed chunks are packed into
+ * {@link Batches} and up to {@link Constants#IMPORT_SEND_CONCURRENCY} are sent at once, under the destination's
+ * {@link RateGovernor} plus the job's own cap; a failed send is retried from the first message it did not send.
+ * An {@link ImportCheckpoint} records how far into the source every chunk has been sent, so a rerun skips that
+ * prefix (a folder by the name of the last file sent, an archive by block, without decompressing). A chunk cut
+ * short by a failure is sent again in full on the rerun. A dry run only parses and counts. An import that stops
+ * on a failure throws once its checkpoint is saved, so its job fails.
+ */
+public class MessageImport {
+    private static final int REPORT_INTERVAL_SEC = 2;
+    private static final int MAX_SEND_ATTEMPTS = 5;
+    private static final int FILES_PER_CHUNK = 250;
+    // order of a folder's files: by the sequence number saved files start with, then by name
+    private static final Comparator<String> FILE_ORDER = Comparator.comparingLong(MessageImport::leadingNumber)
+            .thenComparing(Comparator.naturalOrder());
+
+    public record Options(boolean dryRun, int rateLimit) {
+    }
+
+    /** Inputs {@code start..start+size} of the source; {@code parse} yields one entry per input, null if unreadable. */
+    private record Chunk(long start, int size, Callable<List<ServiceBusMessageData>> parse) {
+    }
+
+    /** A chunk being parsed; {@code inputs} is how many of its inputs this run counts. */
+    private record Parsed(int index, int inputs, CompletableFuture<List<ServiceBusMessage>> messages) {
+    }
+
+    private final Path source;
+    private final MessageMover.Endpoint destination;
+    private final Options options;
+    private final ProgressMeter meter;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong unreadable = new AtomicLong();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private List<Path> files;
+    private ImportCheckpoint checkpoint;
+    private RateGovernor governor;
+    private long[] chunkEnds;
+    private boolean[] chunkDone;
+    private int committed;
+
+    public MessageImport(Path source, MessageMover.Endpoint destination, Options options, ProgressMeter meter) {
+        this.source = source;
+        this.destination = destination;
+        this.options = options;
+        this.meter = meter;
+    }
+
+    /** Runs the import; returns the number of messages sent, or counted on a dry run. */
+    public long run() throws IOException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        ArchiveReader archive = Files.isDirectory(source) ? null : new ArchiveReader(source);
+        try (archive; var pool = Executors.newFixedThreadPool(workers); var executor = newVirtualThreadPerTaskExecutor()) {
+            var chunks = archive == null ? folderChunks() : archiveChunks(archive);
+            long total = chunks.isEmpty() ? 0 : chunks.getLast().start() + chunks.getLast().size();
+            long from = 0;
+            if (!options.dryRun()) {
+                checkpoint = ImportCheckpoint.open(destination.namespace(), destination.name(), source);
+                from = resumePosition();
+                if (from > 0) LogUtils.log("Resuming import of %s: %d of %d inputs were already sent", source, from, total);
+            }
+            meter.setTotal(total - from);
+            chunkEnds = chunks.stream().mapToLong(c -> c.start() + c.size()).toArray();
+            chunkDone = new boolean[chunks.size()];
+            governor = RateGovernor.of(destination.namespace(), new Entity(destination.name(), "", destination.type()))
+                    .withLimit(options.rateLimit());
+            var sender = options.dryRun() ? null : manager(destination.namespace()).getSenderClient(destination.type(), destination.name());
+            long skip = from;
+            var work = CompletableFuture.runAsync(() -> pump(chunks, skip, sender, pool, executor, workers), executor);
+            var failure = meter.await(work, REPORT_INTERVAL_SEC, () -> LogUtils.progress("%s %s -> %s: %s (%s)",
+                    options.dryRun() ? "Counting" : "Importing", source.getFileName(), destination.name(), meter.summary(), governor.describe()));
+            if (failure != null) {
+                failed.set(true);
+                LogUtils.log("Error importing %s: %s", source, failure.getMessage());
+            }
+        } finally {
+            closeCheckpoint();
+        }
+        if (unreadable.get() > 0) LogUtils.log("%d inputs of %s could not be read and were skipped", unreadable.get(), source);
+        if (failed.get()) throw new IOException(String.format("Import stopped after %d messages; run it again to resume", sent.get()));
+        return sent.get();
+    }
+
+    /** Where a rerun starts: a folder after the last file sent, found by name, an archive at the recorded position. */
+    private long resumePosition() {
+        var last = checkpoint.name();
+        if (files == null || last == null) return checkpoint.position();
+        return files.stream().filter(file -> FILE_ORDER.compare(file.getFileName().toString(), last) <= 0).count();
+    }
+
+    private void pump(List<Chunk> chunks, long from, ServiceBusSenderClient sender, ExecutorService pool,
+                      ExecutorService executor, int workers) {
+        var parsing = new ArrayDeque<Parsed>();
+        var sendPermits = new Semaphore(Constants.IMPORT_SEND_CONCURRENCY);
+        var inFlight = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < chunks.size() && !meter.isCancelled() && !failed.get(); i++) {
+            var chunk = chunks.get(i);
+            if (chunkEnds[i] <= from) {
+                markDone(i);
+                continue;
+            }
+            int inputs = (int) (chunkEnds[i] - Math.max(chunk.start(), from));
+            parsing.add(new Parsed(i, inputs, CompletableFuture.supplyAsync(() -> parse(chunk, from), pool)));
+            while (!parsing.isEmpty() && (parsing.peek().messages().isDone() || parsing.size() > workers * 2)) {
+                send(parsing.poll(), sender, sendPermits, inFlight, executor);
+            }
+        }
+        while (!parsing.isEmpty() && !meter.isCancelled() && !failed.get()) send(parsing.poll(), sender, sendPermits, inFlight, executor);
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void send(Parsed parsed, ServiceBusSenderClient sender, Semaphore sendPermits,
+                      List<CompletableFuture<Void>> inFlight, ExecutorService executor) {
+        var messages = parsed.messages().join();
+        if (options.dryRun()) {
+            sent.addAndGet(messages.size());
+            meter.add(parsed.inputs());
+            return;
+        }
+        sendPermits.acquireUninterruptibly();
+        inFlight.add(CompletableFuture.runAsync(() -> {
+            try {
+                sendWithRetry(sender, messages);
+                sent.addAndGet(messages.size());
+                meter.add(parsed.inputs());
+                markDone(parsed.index());
+            } catch (Exception e) {
+                failed.set(true);
+                LogUtils.log("Error sending to %s, stopping import: %s", destination, e.getMessage());
+            } finally {
+                sendPermits.release();
+            }
+        }, executor));
+        inFlight.removeIf(CompletableFuture::isDone);
+    }
+
+    private void sendWithRetry(ServiceBusSenderClient sender, List<ServiceBusMessage> messages) {
+        int done = 0;
+        for (int attempt = 1; done < messages.size(); attempt++) {
+            var rest = messages.subList(done, messages.size());
+            governor.acquire(rest.size());
+            try {
+                Batches.sendBatched(sender, rest);
+                return;
+            } catch (RuntimeException e) {
+                done += Batches.sentBefore(e);
+                if (attempt >= MAX_SEND_ATTEMPTS || !governor.onError(e)) {
+                    sent.addAndGet(done);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /** Advances the checkpoint over the chunks that are done with no unsent chunk before them. */
+    private synchronized void markDone(int index) {
+        chunkDone[index] = true;
+        int before = committed;
+        while (committed < chunkDone.length && chunkDone[committed]) committed++;
+        if (checkpoint == null || committed == before) return;
+        try {
+            long end = chunkEnds[committed - 1];
+            checkpoint.advance(end, files != null ? files.get((int) end - 1).getFileName().toString() : null);
+        } catch (IOException e) {
+            LogUtils.log("Unable to record import position of %s: %s", source, e.getMessage());
+        }
+    }
+
+    /** Parses a chunk and drops the inputs before {@code from}, which a previous run sent. */
+    private List<ServiceBusMessage> parse(Chunk chunk, long from) {
+        List<ServiceBusMessageData> data;
+        try {
+            data = chunk.parse().call();
+        } catch (Exception e) {
+            LogUtils.log("Unable to read inputs %d-%d of %s: %s", chunk.start(), chunk.start() + chunk.size() - 1, source, e.getMessage());
+            unreadable.addAndGet(chunk.size());
+            return List.of();
+        }
+        int skip = (int) Math.max(0, Math.min(data.size(), from - chunk.start()));
+        var messages = new ArrayList<ServiceBusMessage>(data.size() - skip);
+        for (var item : data.subList(skip, data.size())) {
+            if (item == null) unreadable.incrementAndGet();
+            else messages.add(MapperUtils.toServiceBusMessage(item));
+        }
+        return messages;
+    }
+
+    /** The folder's *.json files in {@link #FILE_ORDER}. */
+    private List<Chunk> folderChunks() throws IOException {
+        try (var list = Files.list(source)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(".json") && Files.isRegularFile(p))
+                    .sorted(Comparator.comparing(p -> p.getFileName().toString(), FILE_ORDER))
+                    .toList();
+        }
+        var chunks = new ArrayList<Chunk>();
+        for (int start = 0; start < files.size(); start += FILES_PER_CHUNK) {
+            var slice = files.subList(start, Math.min(files.size(), start + FILES_PER_CHUNK));
+            chunks.add(new Chunk(start, slice.size(), () -> slice.stream().map(MessageImport::readFile).toList()));
+        }
+        return chunks;
+    }
+
+    private List<Chunk> archiveChunks(ArchiveReader archive) {
+        var chunks = new ArrayList<Chunk>();
+        long start = 0;
+        for (int i = 0; i < archive.blocks().size(); i++) {
+            int block = i;
+            int size = archive.blocks().get(i).count();
+            chunks.add(new Chunk(start, size, () -> ArchiveReader.decode(archive.read(block)).stream()
+                    .map(ArchivedMessage::message).toList()));
+            start += size;
+        }
+        return chunks;
+    }
+
+    private static ServiceBusMessageData readFile(Path file) {
+        try {
+            return JsonFileUtil.fromBytes(Files.readAllBytes(file), ServiceBusMessageData.class);
+        } catch (IOException e) {
+            LogUtils.log("Skipping %s: %s", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static long leadingNumber(String name) {
+        int end = 0;
+        while (end < name.length() && end < 18 && Character.isDigit(name.charAt(end))) end++;
+        return end == 0 ? Long.MAX_VALUE : Long.parseLong(name.substring(0, end));
+    }
+
+    private void closeCheckpoint() {
+        if (checkpoint == null) return;
+        try {
+            if (!failed.get() && !meter.isCancelled()) checkpoint.finish();
+            else checkpoint.close();
+        } catch (IOException e) {
+            LogUtils.log("Error closing import checkpoint of %s: %s", source, e.getMessage());
+        }
+    }
+
+    private static ServiceBusManager manager(String namespace) {
+        return Objects.requireNonNull(ApplicationContext.getInstance().managers().get(namespace),
+                () -> "Namespace " + namespace + " is not connected");
+    }
+}
@@ -0,0 +1,284 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.dutils.servicebusviewer.config.ApplicationContext;
+import com.dutils.servicebusviewer.model.NodeType;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static com.azure.messaging.servicebus.models.ServiceBusReceiveMode.PEEK_LOCK;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Streams messages from any entity or sub-queue to any queue or topic, possibly in another connected namespace.
+ * MOVE runs {@code parallelism} PEEK_LOCK receivers that send each received batch and then complete it, taking
+ * together no more messages than the source held when the move started;
+ * COPY pages through the source with peek and keeps up to {@code parallelism} batch sends in flight.
+ * MOVE keeps a {@link CheckpointJournal} so a rerun after a crash completes already-sent messages instead of resending them.
+ * Throttled sends are retried in both modes; MOVE keeps holding the source locks meanwhile, since every abandon
+ * would cost the messages a delivery and a long throttle would push them into their DLQ.
+ */
+public class MessageMover {
+    private static final Duration RECEIVE_WAIT = Duration.ofSeconds(2);
+    private static final int REPORT_INTERVAL_SEC = 2;
+    private static final int MAX_SEND_ATTEMPTS = 5;
+
+    public enum Mode {
+        COPY, MOVE
+    }
+
+    public record Endpoint(String namespace, NodeType type, String name, String sub, boolean isDlq) {
+        public static Endpoint of(String namespace, Entity entity, boolean isDlq) {
+            return new Endpoint(namespace, entity.type(), entity.name(), entity.sub(), isDlq);
+        }
+
+        /** Entity path within the namespace, e.g. {@code topic/subscription}. */
+        public String path() {
+            return type == NodeType.SUBSCRIPTION ? name + "/" + sub : name;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s/%s%s", type.getName(), namespace, path(), isDlq ? "/$DeadLetterQueue" : "");
+        }
+    }
+
+    public record Options(Mode mode, int parallelism, int batchSize) {
+    }
+
+    private final Endpoint source;
+    private final Endpoint destination;
+    private final Options options;
+    private final ProgressMeter meter;
+    private final AtomicLong failed = new AtomicLong();
+    // messages MOVE workers may still take: the source's count when the move started
+    private final AtomicLong remaining = new AtomicLong(Long.MAX_VALUE);
+    private CheckpointJournal journal;
+    private RateGovernor sourceGovernor;
+    private RateGovernor destinationGovernor;
+
+    public MessageMover(Endpoint source, Endpoint destination, Options options, ProgressMeter meter) {
+        // a subscription's name is its topic's, so this also catches a subscription feeding its own topic,
+        // where every sent message would fan back into the source (and into every sibling subscription)
+        if (!source.isDlq() && source.namespace().equals(destination.namespace()) && source.name().equals(destination.name())) {
+            throw new IllegalArgumentException(source.type() == NodeType.SUBSCRIPTION
+                    ? "Messages sent to the subscription's own topic would be delivered back to it"
+                    : "Source and destination are the same entity");
+        }
+        this.source = source;
+        this.destination = destination;
+        this.options = options;
+        this.meter = meter;
+    }
+
+    public long run() {
+        var sourceMgr = manager(source.namespace());
+        var sender = manager(destination.namespace()).getSenderClient(destination.type(), destination.name());
+        try {
+            long count = sourceMgr.getMessageCount(source.type(), source.name(), source.sub(), source.isDlq());
+            meter.setTotal(count);
+            remaining.set(count);
+        } catch (Exception e) {
+            LogUtils.log("Unable to read message count of %s: %s", source, e.getMessage());
+        }
+        sourceGovernor = RateGovernor.of(source.namespace(), new Entity(source.name(), source.sub(), source.type()));
+        destinationGovernor = RateGovernor.of(destination.namespace(), new Entity(destination.name(), "", destination.type()));
+        if (options.mode() == Mode.MOVE) openJournal();
+        Throwable failure;
+        try (var executor = newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<?> work = options.mode() == Mode.MOVE
+                    ? CompletableFuture.allOf(IntStream.range(0, options.parallelism())
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> moveWorker(sourceMgr, sender, executor), executor))
+                    .toArray(CompletableFuture[]::new))
+                    : CompletableFuture.runAsync(() -> copy(sourceMgr, sender, executor), executor);
+            failure = meter.await(work, REPORT_INTERVAL_SEC,
+                    () -> LogUtils.progress("%s %s -> %s: %s (%s)", options.mode(), source.name(), destination.name(),
+                            meter.summary(), destinationGovernor.describe()));
+        }
+        if (failed.get() > 0) {
+            LogUtils.log("%d messages could not be transferred from %s", failed.get(), source);
+        }
+        if (journal != null) closeJournal(failure == null);
+        if (failure != null) {
+            throw new IllegalStateException(String.format("%s from %s stopped after %d messages: %s",
+                    options.mode(), source, meter.count(), failure.getMessage()), failure);
+        }
+        return meter.count();
+    }
+
+    private void moveWorker(ServiceBusManager mgr, ServiceBusSenderClient sender, ExecutorService executor) {
+        try (var receiver = mgr.newReceiver(source.type(), source.name(), source.sub(), PEEK_LOCK, source.isDlq(), options.batchSize())) {
+            while (!meter.isCancelled()) {
+                int wanted = claim(options.batchSize());
+                if (wanted == 0) break;
+                List<ServiceBusReceivedMessage> messages;
+                try {
+                    messages = receiver.receiveMessages(wanted, RECEIVE_WAIT).stream().toList();
+                } catch (Exception e) {
+                    remaining.addAndGet(wanted);
+                    if (sourceGovernor.onError(e)) continue;
+                    throw e;
+                }
+                remaining.addAndGet(wanted - messages.size());
+                if (messages.isEmpty()) break;
+                sourceGovernor.acquire(messages.size());
+                var unsent = messages.stream().filter(msg -> !journal.isSent(msg.getSequenceNumber())).toList();
+                var journaled = new int[1];
+                try {
+                    // each failed attempt journals the batches that did go out, so they are completed, not resent
+                    sendWithRetry(sender, unsent.stream().map(MessageUtils::cloneMessage).toList(), sent -> {
+                        journalSent(unsent.subList(journaled[0], sent));
+                        journaled[0] = sent;
+                    });
+                    journalSent(unsent.subList(journaled[0], unsent.size()));
+                } catch (Exception e) {
+                    LogUtils.log("Error sending to %s, stopping worker: %s", destination, e.getMessage());
+                    messages.forEach(msg -> abandon(receiver, msg));
+                    failed.addAndGet(messages.size());
+                    break;
+                }
+                CompletableFuture.allOf(messages.stream()
+                        .map(msg -> CompletableFuture.runAsync(() -> complete(receiver, msg), executor))
+                        .toArray(CompletableFuture[]::new)).join();
+            }
+        } catch (Exception e) {
+            LogUtils.log("Error receiving from %s: %s", source, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Takes up to {@code wanted} messages from the budget set when the move started, so the workers stop after that
+     * many even if new messages keep arriving; 0 once it is used up.
+     */
+    private int claim(int wanted) {
+        long before = remaining.getAndUpdate(r -> Math.max(0, r - wanted));
+        return (int) Math.min(wanted, before);
+    }
+
+    private void copy(ServiceBusManager mgr, ServiceBusSenderClient sender, ExecutorService executor) {
+        var receiver = mgr.getReceiver(source.type(), source.name(), source.sub(), null, source.isDlq());
+        var sendPermits = new Semaphore(options.parallelism());
+        List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+        long next = 0;
+        while (!meter.isCancelled()) {
+            var page = receiver.peekMessages(options.batchSize(), next).stream().toList();
+            if (page.isEmpty()) break;
+            sourceGovernor.acquire(page.size());
+            next = page.get(page.size() - 1).getSequenceNumber() + 1;
+            var clones = page.stream().map(MessageUtils::cloneMessage).toList();
+            sendPermits.acquireUninterruptibly();
+            inFlight.add(CompletableFuture.runAsync(() -> {
+                try {
+                    sendWithRetry(sender, clones, sent -> {});
+                    meter.add(clones.size());
+                } catch (Exception e) {
+                    failed.addAndGet(clones.size());
+                    LogUtils.log("Error copying %d messages to %s: %s", clones.size(), destination, e.getMessage());
+                } finally {
+                    sendPermits.release();
+                }
+            }, executor));
+            inFlight.removeIf(CompletableFuture::isDone);
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * Sends {@code messages}, retrying throttled sends after the governor's backoff; a retry only sends what the
+     * failed attempt had not sent yet. After every failed attempt {@code onSent} gets how many of {@code messages}
+     * have gone out so far.
+     */
+    private void sendWithRetry(ServiceBusSenderClient sender, List<ServiceBusMessage> messages, IntConsumer onSent) {
+        int done = 0;
+        for (int attempt = 1; ; attempt++) {
+            destinationGovernor.acquire(messages.size() - done);
+            try {
+                Batches.sendBatched(sender, messages.subList(done, messages.size()));
+                return;
+            } catch (RuntimeException e) {
+                done += Batches.sentBefore(e);
+                onSent.accept(done);
+                if (attempt >= MAX_SEND_ATTEMPTS || !destinationGovernor.onError(e)) throw e;
+            }
+        }
+    }
+
+    private void journalSent(List<ServiceBusReceivedMessage> sent) {
+        if (sent.isEmpty()) return;
+        try {
+            journal.markSent(sent.stream().mapToLong(ServiceBusReceivedMessage::getSequenceNumber).toArray());
+        } catch (IOException e) {
+            LogUtils.log("Unable to journal %d sent messages of %s: %s", sent.size(), source, e.getMessage());
+        }
+    }
+
+    private void complete(ServiceBusReceiverClient receiver, ServiceBusReceivedMessage msg) {
+        try {
+            receiver.complete(msg);
+            meter.add(1);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LogUtils.log("Sent but could not complete message %d: %s", msg.getSequenceNumber(), e.getMessage());
+            return;
+        }
+        try {
+            journal.markCompleted(msg.getSequenceNumber());
+        } catch (IOException e) {
+            LogUtils.log("Unable to journal completed message %d: %s", msg.getSequenceNumber(), e.getMessage());
+        }
+    }
+
+    private void openJournal() {
+        var operation = String.join("-", "move", destination.namespace(), destination.name());
+        try {
+            journal = CheckpointJournal.open(source.namespace(), operation,
+                    new Entity(source.name(), source.sub(), source.type()), source.isDlq());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open move journal", e);
+        }
+        if (journal.recovered() > 0) {
+            LogUtils.log("Resuming interrupted move from %s: %d messages were already sent", source, journal.sentCount());
+        }
+    }
+
+    private void closeJournal(boolean finished) {
+        try {
+            if (finished && failed.get() == 0 && !meter.isCancelled()) journal.finish();
+            else journal.close();
+        } catch (IOException e) {
+            LogUtils.log("Error closing move journal of %s: %s", source, e.getMessage());
+        }
+    }
+
+    private void abandon(ServiceBusReceiverClient receiver, ServiceBusReceivedMessage msg) {
+        try {
+            receiver.abandon(msg);
+        } catch (Exception ignored) {
+            // lock lost; the message returns to the source on its own
+        }
+    }
+
+    private static ServiceBusManager manager(String namespace) {
+        return Objects.requireNonNull(ApplicationContext.getInstance().managers().get(namespace),
+                () -> "Namespace " + namespace + " is not connected");
+    }
+}
@@ -0,0 +1,75 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Read-only pass over a whole entity (or its DLQ) for analysis jobs: pages of {@link Constants#MAX_PEEK_SIZE}
+ * are peeked in sequence order, the next page always being read while the current one is handed to
+ * {@code onPage}, so peeking and aggregating overlap. Nothing is locked or settled.
+ */
+public class PeekScan {
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final boolean isDlq;
+    private final ProgressMeter meter;
+    private volatile Throwable failure;
+
+    public PeekScan(ServiceBusManager mgr, Entity entity, boolean isDlq, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.isDlq = isDlq;
+        this.meter = meter;
+    }
+
+    /**
+     * Scans to the end or until cancelled, calling {@code report} every {@code reportIntervalSec} seconds.
+     * A failure, of a peek or of {@code onPage}, ends the scan early and is kept in {@link #failure()};
+     * what was handed to {@code onPage} before it still counts.
+     */
+    public void run(Consumer<List<ServiceBusReceivedMessage>> onPage, int reportIntervalSec, Runnable report) {
+        meter.setTotal(mgr.getMessageCount(entity.type(), entity.name(), entity.sub(), isDlq));
+        try (var receiver = mgr.newReceiver(entity.type(), entity.name(), entity.sub(), null, isDlq, 0);
+             var executor = newVirtualThreadPerTaskExecutor()) {
+            var work = CompletableFuture.runAsync(() -> {
+                var page = CompletableFuture.supplyAsync(() -> peek(receiver, 0), executor);
+                while (!meter.isCancelled()) {
+                    var messages = page.join();
+                    if (messages.isEmpty()) break;
+                    long next = messages.get(messages.size() - 1).getSequenceNumber() + 1;
+                    page = CompletableFuture.supplyAsync(() -> peek(receiver, next), executor);
+                    onPage.accept(messages);
+                    meter.add(messages.size());
+                }
+            }, executor);
+            failure = meter.await(work, reportIntervalSec, report);
+            if (failure != null) {
+                LogUtils.log("Error scanning %s, results cover the messages before it: %s", entity.path(), failure.getMessage());
+            }
+        }
+    }
+
+    /** What ended the last run early, or null when it reached the end (or was cancelled). */
+    public Throwable failure() {
+        return failure;
+    }
+
+    /** Fails the caller's job after a scan that ended early, once it has shown what it got. */
+    public void throwIfFailed() {
+        if (failure != null) throw new IllegalStateException("Scan stopped early: " + failure.getMessage(), failure);
+    }
+
+    private static List<ServiceBusReceivedMessage> peek(ServiceBusReceiverClient receiver, long from) {
+        return receiver.peekMessages(Constants.MAX_PEEK_SIZE, from).stream().toList();
+    }
+}
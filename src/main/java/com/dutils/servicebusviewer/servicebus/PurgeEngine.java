@@ -0,0 +1,120 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.azure.messaging.servicebus.models.ServiceBusReceiveMode.RECEIVE_AND_DELETE;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Drains an entity (or its DLQ) with several RECEIVE_AND_DELETE receivers in parallel.
+ * Batch size grows while receives come back full and shrinks when they come back short;
+ * the run ends when the runtime message count reports the entity empty, not when a batch is short.
+ * There is no journal: deleted messages are gone, so an interrupted purge is simply run again.
+ */
+public class PurgeEngine {
+    private static final int RECEIVERS = 4;
+    private static final int MIN_BATCH = 32;
+    private static final int MAX_BATCH = 256;
+    private static final int PREFETCH = 2 * MAX_BATCH;
+    private static final Duration RECEIVE_WAIT = Duration.ofSeconds(1);
+    private static final long COUNT_REFRESH_MS = 2000;
+    private static final int MAX_IDLE_CHECKS = 3;
+    private static final int REPORT_INTERVAL_SEC = 2;
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final boolean isDlq;
+    private final ProgressMeter meter;
+
+    private final AtomicInteger idleChecks = new AtomicInteger();
+    private volatile boolean drained;
+    private RateGovernor governor;
+    private long lastCountCheck;
+
+    public PurgeEngine(ServiceBusManager mgr, Entity entity, boolean isDlq, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.isDlq = isDlq;
+        this.meter = meter;
+    }
+
+    public long run() {
+        meter.setTotal(remainingCount());
+        governor = RateGovernor.of(mgr.getNamespace(), entity);
+        Throwable failure;
+        try (var executor = newVirtualThreadPerTaskExecutor()) {
+            var workers = IntStream.range(0, RECEIVERS)
+                    .mapToObj(i -> CompletableFuture.runAsync(this::drain, executor))
+                    .toArray(CompletableFuture[]::new);
+            failure = meter.await(CompletableFuture.allOf(workers), REPORT_INTERVAL_SEC,
+                    () -> LogUtils.progress("Purging %s: %s (%s)", entity.name(), meter.summary(), governor.describe()));
+        }
+        if (failure != null) {
+            throw new IllegalStateException(String.format("Purge of %s stopped after %d messages: %s",
+                    entity.name(), meter.count(), failure.getMessage()), failure);
+        }
+        return meter.count();
+    }
+
+    private void drain() {
+        int batch = MIN_BATCH;
+        try (var receiver = mgr.newReceiver(entity.type(), entity.name(), entity.sub(), RECEIVE_AND_DELETE, isDlq, PREFETCH)) {
+            while (!drained && !meter.isCancelled()) {
+                int received = 0;
+                try {
+                    // counted as they arrive, so messages deleted before a failed receive still count
+                    for (var ignored : receiver.receiveMessages(batch, RECEIVE_WAIT)) received++;
+                } catch (Exception e) {
+                    if (!governor.onError(e)) throw e;
+                    batch = MIN_BATCH;
+                    continue;
+                } finally {
+                    meter.add(received);
+                }
+                governor.acquire(received);
+                if (received > 0) {
+                    idleChecks.set(0);
+                    batch = received == batch ? Math.min(batch * 2, MAX_BATCH) : Math.max(batch / 2, MIN_BATCH);
+                } else if (isDrained()) {
+                    drained = true;
+                }
+            }
+        } catch (Exception e) {
+            LogUtils.log("Error purging %s: %s", entity.name(), e.getMessage());
+        }
+    }
+
+    /**
+     * Called by a worker whose receive came back empty. Locked, scheduled or deferred messages stay in
+     * the runtime count but are never delivered, so a few empty rounds with a non-zero count also end the run.
+     */
+    private synchronized boolean isDrained() {
+        if (drained) return true;
+        long now = System.currentTimeMillis();
+        if (now - lastCountCheck < COUNT_REFRESH_MS) return false;
+        lastCountCheck = now;
+        long remaining = remainingCount();
+        if (remaining == 0) return true;
+        if (idleChecks.incrementAndGet() >= MAX_IDLE_CHECKS) {
+            LogUtils.log("Stopping purge of %s: %d messages remain but none can be received", entity.name(), remaining);
+            return true;
+        }
+        return false;
+    }
+
+    private long remainingCount() {
+        try {
+            return mgr.getMessageCount(entity.type(), entity.name(), entity.sub(), isDlq);
+        } catch (Exception e) {
+            LogUtils.log("Unable to read message count of %s: %s", entity.name(), e.getMessage());
+            return -1;
+        }
+    }
+}
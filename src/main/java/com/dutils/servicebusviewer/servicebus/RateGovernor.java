@@ -0,0 +1,228 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusException;
+import com.azure.messaging.servicebus.ServiceBusFailureReason;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Shared message-rate limiter for bulk operations: one token bucket per namespace and one per entity,
+ * both charged for every message sent, received or settled.
+ * Caps come from {@link Constants#RATE_LIMIT_PER_NAMESPACE} / {@link Constants#RATE_LIMIT_PER_ENTITY} (0 = none);
+ * an entity can be given its own cap with {@link #setEntityLimit}.
+ * On top of the caps the effective rate follows AIMD: a server-busy or quota error halves it,
+ * and every throttle-free second adds {@link #INCREASE_PER_SEC} back. A single job can add its own cap with {@link #withLimit}.
+ * Callers holding message locks use {@link #deferBackoff} and {@link #awaitCapacity} so they wait before they
+ * receive, not while locks run down.
+ */
+public class RateGovernor {
+    private static final Map<String, TokenBucket> BUCKETS = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> ENTITY_LIMITS = new ConcurrentHashMap<>();
+    private static final double INCREASE_PER_SEC = 50;
+    private static final double MIN_RATE = 10;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final TokenBucket namespaceBucket;
+    private final TokenBucket entityBucket;
+    // the caller's own cap, or null
+    private final TokenBucket jobBucket;
+    private volatile long backoffUntil = System.nanoTime();
+
+    private RateGovernor(TokenBucket namespaceBucket, TokenBucket entityBucket, TokenBucket jobBucket) {
+        this.namespaceBucket = namespaceBucket;
+        this.entityBucket = entityBucket;
+        this.jobBucket = jobBucket;
+    }
+
+    public static RateGovernor of(String namespace, Entity entity) {
+        var key = entityKey(namespace, entity);
+        return new RateGovernor(
+                BUCKETS.computeIfAbsent(namespace, k -> new TokenBucket(() -> Constants.RATE_LIMIT_PER_NAMESPACE)),
+                BUCKETS.computeIfAbsent(key, k -> new TokenBucket(() -> ENTITY_LIMITS.getOrDefault(key, Constants.RATE_LIMIT_PER_ENTITY))),
+                null);
+    }
+
+    /** Caps every job on {@code entity} at {@code perSecond} messages; 0 goes back to {@link Constants#RATE_LIMIT_PER_ENTITY}. */
+    public static void setEntityLimit(String namespace, Entity entity, int perSecond) {
+        if (perSecond > 0) ENTITY_LIMITS.put(entityKey(namespace, entity), perSecond);
+        else ENTITY_LIMITS.remove(entityKey(namespace, entity));
+    }
+
+    /** The cap of {@code entity}: its own, else {@link Constants#RATE_LIMIT_PER_ENTITY} (0 = none). */
+    public static int entityLimit(String namespace, Entity entity) {
+        return ENTITY_LIMITS.getOrDefault(entityKey(namespace, entity), Constants.RATE_LIMIT_PER_ENTITY);
+    }
+
+    private static String entityKey(String namespace, Entity entity) {
+        return namespace + "/" + entity.path();
+    }
+
+    /** The same shared buckets plus a cap of {@code perSecond} messages for this governor alone (0 = none). */
+    public RateGovernor withLimit(int perSecond) {
+        return perSecond <= 0 ? this : new RateGovernor(namespaceBucket, entityBucket, new TokenBucket(() -> perSecond));
+    }
+
+    /** Charges {@code permits} messages, sleeping when either bucket is in debt. Usable after the fact. */
+    public void acquire(int permits) {
+        if (permits <= 0) return;
+        sleep(reserve(permits));
+    }
+
+    /** Charges {@code permits} messages without waiting, for non-blocking callers; returns the nanoseconds to delay. */
+    public long reserve(int permits) {
+        long wait = Math.max(namespaceBucket.reserve(permits), entityBucket.reserve(permits));
+        if (jobBucket != null) wait = Math.max(wait, jobBucket.reserve(permits));
+        return Math.max(wait, backoffUntil - System.nanoTime());
+    }
+
+    /** Charges {@code permits} messages now and leaves the wait to the next {@link #awaitCapacity}. */
+    public void charge(int permits) {
+        if (permits > 0) reserve(permits);
+    }
+
+    /** Waits until no bucket is in debt and a deferred back-off has passed, without charging anything. */
+    public void awaitCapacity() {
+        sleep(reserve(0));
+    }
+
+    public boolean isBackingOff() {
+        return backoffUntil - System.nanoTime() > 0;
+    }
+
+    /**
+     * Returns true (after cutting the rate and backing off) when {@code e} is a throttling error;
+     * the caller should then retry or put its messages back rather than fail.
+     */
+    public boolean onError(Throwable e) {
+        long backoff = backoff(e);
+        if (backoff < 0) return false;
+        sleep(backoff);
+        return true;
+    }
+
+    /**
+     * Like {@link #onError} but returns at once: the back-off is waited off by the next {@link #acquire},
+     * {@link #awaitCapacity} or {@link #reserve} instead, so a caller can first let go of the messages it holds.
+     */
+    public boolean deferBackoff(Throwable e) {
+        long backoff = backoff(e);
+        if (backoff < 0) return false;
+        long until = System.nanoTime() + backoff;
+        synchronized (this) {
+            if (until - backoffUntil > 0) backoffUntil = until;
+        }
+        return true;
+    }
+
+    /** Cuts the rate and returns the back-off in nanoseconds, or -1 when {@code e} is not a throttling error. */
+    private long backoff(Throwable e) {
+        if (!isThrottling(e)) return -1;
+        int streak = Math.max(namespaceBucket.throttled(), entityBucket.throttled());
+        long backoff = Math.min(MAX_BACKOFF_MS, 500L << Math.min(streak, 6));
+        return TimeUnit.MILLISECONDS.toNanos(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+    }
+
+    /** Current allowed rate in messages per second; infinite when nothing limits it. */
+    public double effectiveRate() {
+        double rate = Math.min(namespaceBucket.effectiveRate(), entityBucket.effectiveRate());
+        return jobBucket == null ? rate : Math.min(rate, jobBucket.effectiveRate());
+    }
+
+    public String describe() {
+        double rate = effectiveRate();
+        return Double.isInfinite(rate) ? "unlimited" : String.format("limit %,.0f msg/s", rate);
+    }
+
+    public static boolean isThrottling(Throwable e) {
+        for (var t = e; t != null; t = t.getCause()) {
+            if (t instanceof ServiceBusException sbe) {
+                var reason = sbe.getReason();
+                if (reason == ServiceBusFailureReason.SERVICE_BUSY || reason == ServiceBusFailureReason.QUOTA_EXCEEDED) return true;
+            }
+            var msg = t.getMessage();
+            if (msg != null && (msg.contains("ServerBusy") || msg.contains("server-busy") || msg.contains("throttl"))) return true;
+        }
+        return false;
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Bucket that may go into debt: a reservation larger than the balance returns how long to wait it off. */
+    static class TokenBucket {
+        private static final long SECOND = 1_000_000_000L;
+
+        private final IntSupplier limit;
+        private double rate = Double.POSITIVE_INFINITY;
+        private double rateBeforeThrottle;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long lastThrottle;
+        private int streak;
+        private long windowStart = lastRefill;
+        private long windowCount;
+        private double observed;
+
+        TokenBucket(IntSupplier limit) {
+            this.limit = limit;
+        }
+
+        synchronized long reserve(int permits) {
+            long now = System.nanoTime();
+            refill(now);
+            windowCount += permits;
+            if (now - windowStart >= SECOND) {
+                observed = windowCount * (double) SECOND / (now - windowStart);
+                windowStart = now;
+                windowCount = 0;
+            }
+            double cap = effectiveRate();
+            if (Double.isInfinite(cap)) return 0;
+            tokens -= permits;
+            return tokens >= 0 ? 0 : (long) (-tokens / cap * SECOND);
+        }
+
+        /** Multiplicative decrease; returns the number of throttles in the current streak. */
+        synchronized int throttled() {
+            long now = System.nanoTime();
+            double base = Math.min(effectiveRate(), observed > 0 ? observed : Double.POSITIVE_INFINITY);
+            if (Double.isInfinite(base)) base = INCREASE_PER_SEC * 10;
+            rateBeforeThrottle = base;
+            rate = Math.max(MIN_RATE, base / 2);
+            tokens = Math.min(tokens, 0);
+            streak = now - lastThrottle < 10 * SECOND ? streak + 1 : 1;
+            lastThrottle = now;
+            return streak;
+        }
+
+        synchronized double effectiveRate() {
+            int configured = limit.getAsInt();
+            return configured > 0 ? Math.min(rate, configured) : rate;
+        }
+
+        /** Refills tokens and applies the additive increase; an uncapped bucket goes back to unlimited at twice its pre-throttle rate. */
+        private void refill(long now) {
+            double seconds = (now - lastRefill) / (double) SECOND;
+            lastRefill = now;
+            if (!Double.isInfinite(rate) && now - lastThrottle >= SECOND) {
+                rate += INCREASE_PER_SEC * seconds;
+                int configured = limit.getAsInt();
+                if (configured > 0 ? rate >= configured : rate >= 2 * rateBeforeThrottle) rate = Double.POSITIVE_INFINITY;
+            }
+            double cap = effectiveRate();
+            if (!Double.isInfinite(cap)) tokens = Math.min(cap, tokens + seconds * cap);
+        }
+    }
+}
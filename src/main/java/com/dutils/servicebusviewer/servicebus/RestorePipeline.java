@@ -0,0 +1,259 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import com.azure.messaging.servicebus.ServiceBusMessageBatch;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.azure.messaging.servicebus.models.ServiceBusReceiveMode.PEEK_LOCK;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Restores a DLQ back to its entity in three overlapping stages:
+ * receive and pack clones into {@link ServiceBusMessageBatch}es, send full batches, and once a batch
+ * is accepted complete its source messages concurrently. A failed send abandons the whole batch; a throttled one
+ * puts it back to be received again, and the {@link RateGovernor} back-off is waited off before the next receive,
+ * with no locks held, rather than in the failed send. Sends and completes are written to a {@link CheckpointJournal};
+ * messages an interrupted run already sent are completed without being sent again. The restore ends after
+ * {@link #MAX_EMPTY_RECEIVES} empty receives in a row, or at the first one once the DLQ count reads zero.
+ */
+public class RestorePipeline {
+    private static final Duration RECEIVE_WAIT = Duration.ofSeconds(2);
+    private static final int MAX_EMPTY_RECEIVES = 3;
+    private static final int REPORT_INTERVAL_SEC = 2;
+
+    public record Options(int receiveBatch, int sendConcurrency, int completeConcurrency) {
+        public static Options defaults() {
+            return new Options(Constants.RESTORE_RECEIVE_BATCH, Constants.RESTORE_SEND_CONCURRENCY,
+                    Constants.RESTORE_COMPLETE_CONCURRENCY);
+        }
+    }
+
+    private record PendingBatch(ServiceBusMessageBatch batch, List<ServiceBusReceivedMessage> sources) {
+        PendingBatch(ServiceBusMessageBatch batch) {
+            this(batch, new ArrayList<>());
+        }
+
+        boolean add(ServiceBusReceivedMessage source, ServiceBusMessage clone) {
+            if (!batch.tryAddMessage(clone)) return false;
+            sources.add(source);
+            return true;
+        }
+
+        boolean isEmpty() {
+            return sources.isEmpty();
+        }
+    }
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final Options options;
+    private final ProgressMeter meter;
+    private final AtomicLong failed = new AtomicLong();
+
+    private ServiceBusSenderClient sender;
+    private ServiceBusReceiverClient receiver;
+    private ExecutorService executor;
+    private Semaphore sendPermits;
+    private Semaphore completePermits;
+    private CheckpointJournal journal;
+    private RateGovernor governor;
+
+    public RestorePipeline(ServiceBusManager mgr, Entity entity, Options options, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.options = options;
+        this.meter = meter;
+    }
+
+    public long run() {
+        sender = mgr.getSenderClient(entity.type(), entity.name());
+        receiver = mgr.getReceiver(entity.type(), entity.name(), entity.sub(), PEEK_LOCK, true);
+        sendPermits = new Semaphore(options.sendConcurrency());
+        completePermits = new Semaphore(options.completeConcurrency());
+        try {
+            meter.setTotal(mgr.getMessageCount(entity.type(), entity.name(), entity.sub(), true));
+        } catch (Exception e) {
+            LogUtils.log("Unable to read DLQ count of %s: %s", entity.name(), e.getMessage());
+        }
+        governor = RateGovernor.of(mgr.getNamespace(), entity);
+        try {
+            journal = CheckpointJournal.open(mgr.getNamespace(), "restore", entity, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open restore journal", e);
+        }
+        if (journal.recovered() > 0) {
+            LogUtils.log("Resuming interrupted restore of %s: %d messages were already sent, %d completed",
+                    entity.name(), journal.sentCount(), journal.completedCount());
+        }
+        Throwable failure;
+        try (var exec = newVirtualThreadPerTaskExecutor()) {
+            executor = exec;
+            failure = meter.await(CompletableFuture.runAsync(this::receiveStage, exec), REPORT_INTERVAL_SEC,
+                    () -> LogUtils.progress("Restoring %s: %s (%s)", entity.name(), meter.summary(), governor.describe()));
+        }
+        closeJournal(failure == null);
+        if (failed.get() > 0) {
+            LogUtils.log("Restore of %s: %d messages could not be restored and were left in the DLQ", entity.name(), failed.get());
+        }
+        if (failure != null) {
+            throw new IllegalStateException(String.format("Restore of %s stopped after %d messages: %s",
+                    entity.name(), meter.count(), failure.getMessage()), failure);
+        }
+        return meter.count();
+    }
+
+    private void receiveStage() {
+        List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+        var pending = new PendingBatch(sender.createMessageBatch());
+        int emptyReceives = 0;
+        while (!meter.isCancelled()) {
+            // don't hold a partial batch's locks through a back-off
+            if (governor.isBackingOff() && !pending.isEmpty()) {
+                pending.sources().forEach(this::putBack);
+                pending = new PendingBatch(sender.createMessageBatch());
+            }
+            governor.awaitCapacity();
+            List<ServiceBusReceivedMessage> messages;
+            try {
+                messages = receiver.receiveMessages(options.receiveBatch(), RECEIVE_WAIT).stream().toList();
+            } catch (Exception e) {
+                if (governor.deferBackoff(e)) continue;
+                throw e;
+            }
+            if (messages.isEmpty()) {
+                // a quiet DLQ can return nothing for a while, e.g. while abandoned messages become visible again
+                if (++emptyReceives >= MAX_EMPTY_RECEIVES || isDlqEmpty()) break;
+                continue;
+            }
+            emptyReceives = 0;
+            governor.charge(messages.size());
+            for (var msg : messages) {
+                if (journal.isSent(msg.getSequenceNumber())) {
+                    inFlight.add(CompletableFuture.runAsync(() -> complete(msg), executor));
+                    continue;
+                }
+                var clone = MessageUtils.cloneMessage(msg);
+                if (pending.add(msg, clone)) continue;
+                if (!pending.isEmpty()) {
+                    inFlight.add(dispatch(pending));
+                    pending = new PendingBatch(sender.createMessageBatch());
+                }
+                if (!pending.add(msg, clone)) {
+                    LogUtils.log("Message %d is larger than the maximum batch size, leaving it in the DLQ", msg.getSequenceNumber());
+                    abandon(msg);
+                }
+            }
+            // a short receive means the DLQ is running dry; don't hold locks waiting to fill the batch
+            if (messages.size() < options.receiveBatch() && !pending.isEmpty()) {
+                inFlight.add(dispatch(pending));
+                pending = new PendingBatch(sender.createMessageBatch());
+            }
+            inFlight.removeIf(CompletableFuture::isDone);
+        }
+        if (!pending.isEmpty()) {
+            if (meter.isCancelled()) pending.sources().forEach(this::abandon);
+            else inFlight.add(dispatch(pending));
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /** True only when the DLQ count reads zero; locked messages still count, so zero also means none is in flight. */
+    private boolean isDlqEmpty() {
+        try {
+            return mgr.getMessageCount(entity.type(), entity.name(), entity.sub(), true) == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private CompletableFuture<Void> dispatch(PendingBatch pending) {
+        sendPermits.acquireUninterruptibly();
+        return CompletableFuture.runAsync(() -> {
+                    try {
+                        sender.sendMessages(pending.batch());
+                    } finally {
+                        sendPermits.release();
+                    }
+                    try {
+                        journal.markSent(pending.sources().stream().mapToLong(ServiceBusReceivedMessage::getSequenceNumber).toArray());
+                    } catch (IOException e) {
+                        LogUtils.log("Unable to journal sent batch of %s: %s", entity.name(), e.getMessage());
+                    }
+                }, executor)
+                .thenCompose(v -> CompletableFuture.allOf(pending.sources().stream()
+                        .map(msg -> CompletableFuture.runAsync(() -> complete(msg), executor))
+                        .toArray(CompletableFuture[]::new)))
+                .exceptionally(e -> {
+                    if (governor.deferBackoff(e)) {
+                        pending.sources().forEach(this::putBack);
+                        return null;
+                    }
+                    LogUtils.log("Error sending batch of %d messages to %s: %s", pending.sources().size(), entity.name(), e.getMessage());
+                    pending.sources().forEach(this::abandon);
+                    return null;
+                });
+    }
+
+    private void complete(ServiceBusReceivedMessage msg) {
+        completePermits.acquireUninterruptibly();
+        try {
+            receiver.complete(msg);
+            meter.add(1);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LogUtils.log("Sent but could not complete DLQ message %d: %s", msg.getSequenceNumber(), e.getMessage());
+            return;
+        } finally {
+            completePermits.release();
+        }
+        try {
+            journal.markCompleted(msg.getSequenceNumber());
+        } catch (IOException e) {
+            LogUtils.log("Unable to journal completed message %d: %s", msg.getSequenceNumber(), e.getMessage());
+        }
+    }
+
+    /** Deletes the journal only after a run that got to the end; anything else keeps it for the next run. */
+    private void closeJournal(boolean finished) {
+        try {
+            if (finished && failed.get() == 0 && !meter.isCancelled()) journal.finish();
+            else {
+                journal.close();
+                LogUtils.log("Restore of %s did not finish; run it again to resume from the journal", entity.name());
+            }
+        } catch (IOException e) {
+            LogUtils.log("Error closing restore journal of %s: %s", entity.name(), e.getMessage());
+        }
+    }
+
+    private void abandon(ServiceBusReceivedMessage msg) {
+        failed.incrementAndGet();
+        putBack(msg);
+    }
+
+    /** Unlocks a message so it is received again later in the run. */
+    private void putBack(ServiceBusReceivedMessage msg) {
+        try {
+            receiver.abandon(msg);
+        } catch (Exception e) {
+            LogUtils.log("Error abandoning message %d: %s", msg.getSequenceNumber(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.azure.messaging.servicebus.models.DeadLetterOptions;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.LongHashSet;
+import com.dutils.servicebusviewer.utils.MessageUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.azure.messaging.servicebus.models.ServiceBusReceiveMode.PEEK_LOCK;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Applies an action to a set of messages identified by sequence number.
+ * Only locked messages can be settled, and a skipped message abandoned while the scan goes on is delivered straight
+ * back, so the unrelated messages ahead of the targets stay locked (their locks renewed) until the scan ends and are
+ * then abandoned, costing each one delivery count. The scan therefore locks as little as it can: it stops once every
+ * target is handled, and on non-partitioned entities, where sequence numbers follow delivery order, a peek pass first
+ * counts the messages up to the last target so nothing behind it is received. At most
+ * {@link Constants#SELECTIVE_MAX_LOCKS} unrelated messages are held; targets behind them are left in place and
+ * counted by {@link #leftBehind()}.
+ */
+public class SelectiveOperation {
+    private static final int RECEIVE_BATCH = 100;
+    private static final Duration RECEIVE_WAIT = Duration.ofSeconds(2);
+    private static final int PEEK_PAGE = 250;
+    private static final Duration MAX_LOCK_RENEWAL = Duration.ofMinutes(10);
+    private static final int REPORT_INTERVAL_SEC = 2;
+
+    public enum Action {
+        RESTORE("Restore", "Restored"),
+        DELETE("Delete", "Deleted"),
+        DEAD_LETTER("Dead-letter", "Dead-lettered");
+
+        private final String title;
+        private final String label;
+
+        Action(String title, String label) {
+            this.title = title;
+            this.label = label;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final boolean isDlq;
+    private final Action action;
+    private final LongHashSet targets;
+    private final ProgressMeter meter;
+    private DeadLetterOptions deadLetterOptions = MessageUtils.deadLetterOptions;
+
+    private final LongHashSet handled = new LongHashSet();
+    private final List<ServiceBusReceivedMessage> held = new ArrayList<>();
+    private final LongHashSet seen = new LongHashSet();
+    private RateGovernor governor;
+    private final AtomicLong failed = new AtomicLong();
+
+    public SelectiveOperation(ServiceBusManager mgr, Entity entity, boolean isDlq, Action action,
+                              LongHashSet targets, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.isDlq = isDlq;
+        this.action = action;
+        this.targets = targets;
+        this.meter = meter;
+    }
+
+    public SelectiveOperation deadLetterOptions(DeadLetterOptions options) {
+        this.deadLetterOptions = options;
+        return this;
+    }
+
+    /** Returns the sequence numbers that were handled. */
+    public LongHashSet run() {
+        if (meter.total() < 0) meter.setTotal(targets.size());
+        governor = RateGovernor.of(mgr.getNamespace(), entity);
+        ServiceBusSenderClient sender = action == Action.RESTORE ? mgr.getSenderClient(entity.type(), entity.name()) : null;
+        // locks the scan may take; unbounded when delivery order says nothing about where the targets are
+        long lockBudget = mgr.isPartitioned(entity.type(), entity.name()) ? Long.MAX_VALUE : countThroughLastTarget();
+        try (var receiver = mgr.newReceiver(entity.type(), entity.name(), entity.sub(), PEEK_LOCK, isDlq, 0);
+             var executor = newVirtualThreadPerTaskExecutor()) {
+            var scan = CompletableFuture.runAsync(() -> scan(receiver, sender, lockBudget, executor), executor);
+            var failure = meter.await(scan, REPORT_INTERVAL_SEC,
+                    () -> LogUtils.progress("%s %s: %s", action.getLabel(), entity.name(), meter.summary()));
+            // the scan may still be winding down after an interrupt; the held locks are only let go once it has
+            scan.handle((v, e) -> null).join();
+            abandonHeld(receiver, executor);
+            if (failure != null) {
+                throw new IllegalStateException(String.format("%s %s stopped after %d of the selected messages: %s",
+                        action.getLabel(), entity.name(), handled.size(), failure.getMessage()), failure);
+            }
+        }
+        if (leftBehind() > 0) {
+            LogUtils.log("%d selected messages in %s were left in place (settled elsewhere, locked, or behind too many other messages)",
+                    leftBehind(), entity.name());
+        }
+        return handled;
+    }
+
+    /** Targets that were not handled: never reached, or reached but not settled. */
+    public long leftBehind() {
+        return targets.size() + failed.get();
+    }
+
+    /**
+     * Peeks (no locks) from the head to the last target and returns how many messages the scan has to receive to
+     * reach it; stops counting once that is more than the scan may hold anyway.
+     */
+    private long countThroughLastTarget() {
+        long maxTarget = targets.max();
+        long limit = (long) Constants.SELECTIVE_MAX_LOCKS + targets.size();
+        var receiver = mgr.getReceiver(entity.type(), entity.name(), entity.sub(), null, isDlq);
+        long count = 0, next = 0;
+        while (count <= limit && !meter.isCancelled()) {
+            var page = receiver.peekMessages(PEEK_PAGE, next).stream().toList();
+            if (page.isEmpty()) break;
+            for (var msg : page) {
+                if (msg.getSequenceNumber() > maxTarget) return count;
+                count++;
+            }
+            next = page.get(page.size() - 1).getSequenceNumber() + 1;
+        }
+        return count;
+    }
+
+    private void scan(ServiceBusReceiverClient receiver, ServiceBusSenderClient sender, long lockBudget, ExecutorService executor) {
+        long received = 0;
+        while (!targets.isEmpty() && !meter.isCancelled()) {
+            int wanted = (int) Math.min(RECEIVE_BATCH, lockBudget - received);
+            if (wanted <= 0) break;
+            if (held.size() >= Constants.SELECTIVE_MAX_LOCKS) {
+                LogUtils.log("%d unrelated messages locked while scanning %s (SELECTIVE_MAX_LOCKS); stopping",
+                        held.size(), entity.name());
+                break;
+            }
+            List<ServiceBusReceivedMessage> messages;
+            try {
+                messages = receiver.receiveMessages(wanted, RECEIVE_WAIT).stream().toList();
+            } catch (Exception e) {
+                if (governor.onError(e)) continue;
+                throw e;
+            }
+            if (messages.isEmpty()) break;
+            received += messages.size();
+            governor.acquire(messages.size());
+            List<ServiceBusReceivedMessage> matched = new ArrayList<>();
+            boolean wrapped = false;
+            for (var msg : messages) {
+                long seq = msg.getSequenceNumber();
+                wrapped |= !seen.add(seq);
+                if (targets.remove(seq)) matched.add(msg);
+                else hold(receiver, msg);
+            }
+            apply(receiver, sender, matched, executor);
+            if (wrapped) {
+                LogUtils.log("Locks on skipped messages in %s were lost before the scan finished; stopping", entity.name());
+                break;
+            }
+        }
+    }
+
+    /** Keeps a skipped message locked until the scan ends; renewal keeps a long scan from losing it midway. */
+    private void hold(ServiceBusReceiverClient receiver, ServiceBusReceivedMessage msg) {
+        held.add(msg);
+        receiver.renewMessageLock(msg, MAX_LOCK_RENEWAL, e -> {
+            // the message is back in the entity; the wrap check notices if the scan meets it again
+        });
+    }
+
+    private void apply(ServiceBusReceiverClient receiver, ServiceBusSenderClient sender,
+                       List<ServiceBusReceivedMessage> matched, ExecutorService executor) {
+        if (matched.isEmpty()) return;
+        if (action == Action.RESTORE) {
+            int sent = send(sender, matched);
+            if (sent < matched.size()) {
+                // the rest were not sent and go back to the DLQ; the ones that were must still be completed
+                var unsent = matched.subList(sent, matched.size());
+                held.addAll(unsent);
+                failed.addAndGet(unsent.size());
+                matched = matched.subList(0, sent);
+            }
+        }
+        CompletableFuture.allOf(matched.stream()
+                .map(msg -> CompletableFuture.runAsync(() -> settle(receiver, msg), executor))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    /** Sends clones of {@code matched} in order; returns how many went out before a failure. */
+    private int send(ServiceBusSenderClient sender, List<ServiceBusReceivedMessage> matched) {
+        try {
+            Batches.sendBatched(sender, matched.stream().map(MessageUtils::cloneMessage).toList());
+            return matched.size();
+        } catch (Exception e) {
+            governor.onError(e);
+            int sent = Batches.sentBefore(e);
+            LogUtils.log("Error sending %d messages to %s: %s", matched.size() - sent, entity.name(), e.getMessage());
+            return sent;
+        }
+    }
+
+    private void settle(ServiceBusReceiverClient receiver, ServiceBusReceivedMessage msg) {
+        try {
+            switch (action) {
+                case RESTORE, DELETE -> receiver.complete(msg);
+                case DEAD_LETTER -> receiver.deadLetter(msg, deadLetterOptions);
+            }
+            synchronized (handled) {
+                handled.add(msg.getSequenceNumber());
+            }
+            meter.add(1);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LogUtils.log("Error settling message %d: %s", msg.getSequenceNumber(), e.getMessage());
+        }
+    }
+
+    private void abandonHeld(ServiceBusReceiverClient receiver, ExecutorService executor) {
+        CompletableFuture.allOf(held.stream()
+                .map(msg -> CompletableFuture.runAsync(() -> {
+                    try {
+                        receiver.abandon(msg);
+                    } catch (Exception ignored) {
+                        // lock already expired; the message is back in the entity either way
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new)).join();
+        held.clear();
+    }
+}
@@ -1,15 +1,19 @@
 package com.dutils.servicebusviewer.servicebus;
 
+import com.azure.core.amqp.AmqpRetryOptions;
 import com.azure.messaging.servicebus.ServiceBusClientBuilder;
 import com.azure.messaging.servicebus.ServiceBusReceiverAsyncClient;
 import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.azure.messaging.servicebus.ServiceBusSenderAsyncClient;
 import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.azure.messaging.servicebus.ServiceBusSessionReceiverClient;
 import com.azure.messaging.servicebus.administration.ServiceBusAdministrationClient;
 import com.azure.messaging.servicebus.administration.ServiceBusAdministrationClientBuilder;
 import com.azure.messaging.servicebus.models.ServiceBusReceiveMode;
 import com.azure.messaging.servicebus.models.SubQueue;
 import com.dutils.servicebusviewer.model.NodeType;
 
+import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -17,6 +21,9 @@ public class ServiceBusManager {
 
     private final ServiceBusAdministrationClient adminClient;
     private final static int PREFETCH_COUNT = 20;
+    private final static Duration SESSION_LOCK_RENEWAL = Duration.ofMinutes(5);
+    private volatile String namespace;
+    private final Map<String, Boolean> partitioned = new ConcurrentHashMap<>();
 
     public ServiceBusSenderClient getNewSenderClient(NodeType type, String queueName) {
         return senderClient.getSender(type,queueName,true);
@@ -25,6 +32,10 @@ public class ServiceBusManager {
         return senderClient.getSender(type,queueName,false);
     }
 
+    public ServiceBusSenderAsyncClient getAsyncSenderClient(NodeType type, String queueName) {
+        return senderClient.getAsyncSender(type, queueName);
+    }
+
     private final SenderClient senderClient;
 
     public ReceiverClient getReceiverClient() {
@@ -44,7 +55,8 @@ public class ServiceBusManager {
     }
 
     public String getNamespace() {
-        return this.adminClient.getNamespaceProperties().getName();
+        if (namespace == null) namespace = this.adminClient.getNamespaceProperties().getName();
+        return namespace;
     }
 
     public ServiceBusReceiverClient getReceiver(NodeType type, String entityName, String subEntityName,
@@ -69,12 +81,52 @@ public class ServiceBusManager {
                 receiverClient.newReceiver(type, entityName, subEntityName, mode, null);
     }
 
+    public ServiceBusReceiverClient newReceiver(NodeType type, String entityName, String subEntityName,
+                                                ServiceBusReceiveMode mode, boolean isDlq, int prefetchCount) {
+        return receiverClient.newReceiver(type, entityName, subEntityName, mode,
+                isDlq ? SubQueue.DEAD_LETTER_QUEUE : null, prefetchCount);
+    }
+
     public ServiceBusReceiverAsyncClient newAsyncReceiver(NodeType type, String entityName, String subEntityName,
                                                           ServiceBusReceiveMode mode, boolean isDlq) {
         return isDlq ? receiverClient.newAsyncReceiver(type, entityName, subEntityName, mode, SubQueue.DEAD_LETTER_QUEUE) :
                 receiverClient.newAsyncReceiver(type, entityName, subEntityName, mode, null);
     }
 
+    /** Session receiver whose operations give up after {@code tryTimeout}, so acceptNextSession returns promptly once no session is free. */
+    public ServiceBusSessionReceiverClient newSessionReceiver(NodeType type, String entityName, String subEntityName, Duration tryTimeout) {
+        return receiverClient.newSessionReceiver(type, entityName, subEntityName, tryTimeout);
+    }
+
+    public long getMessageCount(NodeType type, String entityName, String subEntityName, boolean isDlq) {
+        return switch (type) {
+            case QUEUE -> {
+                var props = adminClient.getQueueRuntimeProperties(entityName);
+                yield isDlq ? props.getDeadLetterMessageCount() : props.getActiveMessageCount();
+            }
+            case SUBSCRIPTION -> {
+                var props = adminClient.getSubscriptionRuntimeProperties(entityName, subEntityName);
+                yield isDlq ? props.getDeadLetterMessageCount() : props.getActiveMessageCount();
+            }
+            default -> 0L;
+        };
+    }
+
+    /**
+     * Whether the entity is partitioned, where sequence numbers only grow within a partition. Read once per entity;
+     * assumed partitioned when the properties can't be read, since that is the safe side for callers.
+     */
+    public boolean isPartitioned(NodeType type, String entityName) {
+        return partitioned.computeIfAbsent(type + ":" + entityName, k -> {
+            try {
+                return type == NodeType.QUEUE ? adminClient.getQueue(entityName).isPartitioningEnabled()
+                        : adminClient.getTopic(entityName).isPartitioningEnabled();
+            } catch (Exception e) {
+                return true;
+            }
+        });
+    }
+
     public void closeReceiver(String queueName) {
         receiverClient.close(queueName);
     }
@@ -108,8 +160,13 @@ public class ServiceBusManager {
 
         public ServiceBusReceiverClient newReceiver(NodeType type, String entityName, String subEntityName,
                                                     ServiceBusReceiveMode mode, SubQueue subQ) {
+            return newReceiver(type, entityName, subEntityName, mode, subQ, PREFETCH_COUNT);
+        }
+
+        public ServiceBusReceiverClient newReceiver(NodeType type, String entityName, String subEntityName,
+                                                    ServiceBusReceiveMode mode, SubQueue subQ, int prefetchCount) {
             var builder = createReceiverBuilder(type, entityName, subEntityName, mode, subQ);
-            builder.prefetchCount(PREFETCH_COUNT);
+            builder.prefetchCount(prefetchCount);
             return builder.buildClient();
         }
 
@@ -120,6 +177,19 @@ public class ServiceBusManager {
             return builder.buildAsyncClient();
         }
 
+        public ServiceBusSessionReceiverClient newSessionReceiver(NodeType type, String entityName, String subEntityName, Duration tryTimeout) {
+            var builder = new ServiceBusClientBuilder().connectionString(connectionString)
+                    .retryOptions(new AmqpRetryOptions().setTryTimeout(tryTimeout))
+                    .sessionReceiver()
+                    .receiveMode(ServiceBusReceiveMode.PEEK_LOCK)
+                    .prefetchCount(0)
+                    .maxAutoLockRenewDuration(SESSION_LOCK_RENEWAL);
+            if (type.equals(NodeType.QUEUE)) builder.queueName(entityName);
+            else builder.topicName(entityName);
+            if (subEntityName != null && !subEntityName.isEmpty()) builder.subscriptionName(subEntityName);
+            return builder.buildClient();
+        }
+
         private ServiceBusClientBuilder.ServiceBusReceiverClientBuilder createReceiverBuilder(NodeType type, String entityName, String subEntityName, ServiceBusReceiveMode mode, SubQueue subQ) {
             var builder = new ServiceBusClientBuilder().connectionString(connectionString).receiver();
             if (type.equals(NodeType.QUEUE)) builder.queueName(entityName);
@@ -156,6 +226,7 @@ public class ServiceBusManager {
     public static class SenderClient {
         private final String connectionString;
         private final Map<String, ServiceBusSenderClient> senderClientMap = new ConcurrentHashMap<>();
+        private final Map<String, ServiceBusSenderAsyncClient> asyncSenderClientMap = new ConcurrentHashMap<>();
 
         public SenderClient(String connectionString) {
             this.connectionString = connectionString;
@@ -171,7 +242,16 @@ public class ServiceBusManager {
                     k -> createSenderClient(type, entityName));
         }
 
+        public ServiceBusSenderAsyncClient getAsyncSender(NodeType type, String entityName) {
+            return asyncSenderClientMap.computeIfAbsent(buildKey(type, entityName),
+                    k -> createSenderBuilder(type, entityName).buildAsyncClient());
+        }
+
         private ServiceBusSenderClient createSenderClient(NodeType type, String entityName) {
+            return createSenderBuilder(type, entityName).buildClient();
+        }
+
+        private ServiceBusClientBuilder.ServiceBusSenderClientBuilder createSenderBuilder(NodeType type, String entityName) {
             ServiceBusClientBuilder.ServiceBusSenderClientBuilder builder =
                     new ServiceBusClientBuilder()
                             .connectionString(connectionString)
@@ -181,7 +261,7 @@ public class ServiceBusManager {
             } else {
                 builder.topicName(entityName);
             }
-            return builder.buildClient();
+            return builder;
         }
 
         private String buildKey(NodeType type, String entityName) {
@@ -197,5 +277,7 @@ public class ServiceBusManager {
                 }
             });
             senderClientMap.clear();
+            asyncSenderClientMap.values().forEach(ServiceBusSenderAsyncClient::close);
+            asyncSenderClientMap.clear();
         }
     }}
\ No newline at end of file
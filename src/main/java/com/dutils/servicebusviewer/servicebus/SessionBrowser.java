@@ -0,0 +1,323 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.core.amqp.exception.AmqpErrorCondition;
+import com.azure.core.amqp.exception.AmqpException;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.azure.messaging.servicebus.ServiceBusSessionReceiverClient;
+import com.dutils.servicebusviewer.mgr.PagedBrowser;
+import com.dutils.servicebusviewer.utils.Constants;
+import com.dutils.servicebusviewer.utils.LogUtils;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * Pages through the sessions of a session-enabled queue or subscription. The SDK cannot list sessions, so a pass
+ * keeps a pool of up to {@link Constants#SESSION_BROWSE_CONCURRENCY} accepted sessions, accepts and peeks them in
+ * parallel, and hands out their messages merged in sequence order across the pool. A session peeked to its end (or to
+ * {@link Constants#SESSION_PEEK_LIMIT} in this pass) is released for its consumers and replaced by the next free one;
+ * if the service offers it again within the pass it is held until the pass ends, so it can't keep coming back. The pass
+ * ends once no session is free, at {@link Constants#SESSION_BROWSE_MAX_SESSIONS} sessions, or at
+ * {@link Constants#SESSION_BROWSE_MAX_LINKS} held links. Every session keeps its own cursor, so the next pass (a refresh
+ * or resume) continues each known session after its last row and starts unknown ones from their beginning. Nothing is
+ * locked while the browse is parked. An accept that fails for any reason but "no free session" fails the fetch.
+ */
+public class SessionBrowser implements PagedBrowser.PageSource, AutoCloseable {
+    private static final Duration ACCEPT_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_STATE_CHARS = 200;
+
+    public record SessionInfo(String sessionId, int messageCount, boolean more, String state) {
+    }
+
+    public record Result(List<SessionInfo> sessions, long messages, boolean truncated) {
+    }
+
+    /** An accepted session of the pool with the peeked messages not handed out yet. */
+    private static final class Open {
+        final ServiceBusReceiverClient client;
+        final ArrayDeque<ServiceBusReceivedMessage> buffer = new ArrayDeque<>();
+        long peekFrom;
+        int count;
+        boolean ended;
+        boolean more;
+
+        Open(ServiceBusReceiverClient client, long peekFrom) {
+            this.client = client;
+            this.peekFrom = peekFrom;
+        }
+
+        String id() {
+            return client.getSessionId();
+        }
+    }
+
+    private final Entity entity;
+    private final ProgressMeter meter;
+    private final Consumer<Result> onPass;
+    private final ServiceBusSessionReceiverClient client;
+    private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    // next sequence number to show per session, across passes
+    private final Map<String, Long> cursors = new HashMap<>();
+    private final List<Open> pool = new ArrayList<>();
+    // sessions offered again after they were done in this pass, held so they aren't offered once more
+    private final List<ServiceBusReceiverClient> held = new ArrayList<>();
+    private final Set<String> done = new HashSet<>();
+    private final List<SessionInfo> sessions = new ArrayList<>();
+    private long passMessages;
+    private boolean noFreeSession;
+    private boolean truncated;
+    private boolean passDone = true;
+
+    /** {@code onPass} gets the sessions of each finished pass, on the fetching thread. */
+    public SessionBrowser(ServiceBusManager mgr, Entity entity, ProgressMeter meter, Consumer<Result> onPass) {
+        this.entity = entity;
+        this.meter = meter;
+        this.onPass = onPass;
+        this.client = mgr.newSessionReceiver(entity.type(), entity.name(), entity.sub(), ACCEPT_TIMEOUT);
+    }
+
+    /**
+     * Up to {@code size} messages of the pooled sessions in sequence order; empty once a pass ends. Sessions keep their
+     * own cursors, so {@code fromSequenceNumber} is not used.
+     */
+    @Override
+    public synchronized List<ServiceBusReceivedMessage> fetch(int size, long fromSequenceNumber) {
+        if (passDone) startPass();
+        while (!meter.isCancelled()) {
+            fill();
+            refill(size);
+            var page = merge(size);
+            if (!page.isEmpty()) return page;
+            if (pool.isEmpty() && (noFreeSession || truncated)) return endPass();
+        }
+        return List.of();
+    }
+
+    /** Releases every session held between pages, so a parked browse locks nothing; the cursors are kept. */
+    @Override
+    public void pause() {
+        CompletableFuture.runAsync(() -> {
+            synchronized (this) {
+                releaseAll();
+                passDone = true;
+            }
+        });
+    }
+
+    /** Stops the browse: an in-flight fetch ends at its next step and the sessions and client are closed. */
+    @Override
+    public void close() {
+        meter.cancel();
+        CompletableFuture.runAsync(() -> {
+            synchronized (this) {
+                releaseAll();
+                client.close();
+                executor.close();
+            }
+        });
+    }
+
+    private void startPass() {
+        passDone = false;
+        noFreeSession = false;
+        truncated = false;
+        done.clear();
+        sessions.clear();
+        passMessages = 0;
+    }
+
+    private List<ServiceBusReceivedMessage> endPass() {
+        passDone = true;
+        held.forEach(SessionBrowser::release);
+        held.clear();
+        if (truncated) {
+            LogUtils.log("Stopped after %d sessions of %s (SESSION_BROWSE_MAX_SESSIONS / SESSION_BROWSE_MAX_LINKS); refresh to continue",
+                    sessions.size(), entity.path());
+        }
+        var sorted = new ArrayList<>(sessions);
+        sorted.sort(Comparator.comparing(SessionInfo::sessionId));
+        onPass.accept(new Result(sorted, passMessages, truncated));
+        return List.of();
+    }
+
+    /** Accepts sessions in parallel until the pool is full, no session is free, or a pass limit is reached. */
+    private void fill() {
+        while (!noFreeSession && !truncated && pool.size() < Constants.SESSION_BROWSE_CONCURRENCY && !meter.isCancelled()) {
+            if (done.size() + pool.size() >= Constants.SESSION_BROWSE_MAX_SESSIONS || held.size() >= Constants.SESSION_BROWSE_MAX_LINKS) {
+                truncated = true;
+                return;
+            }
+            int wanted = Constants.SESSION_BROWSE_CONCURRENCY - pool.size();
+            var accepts = new ArrayList<CompletableFuture<ServiceBusReceiverClient>>(wanted);
+            for (int i = 0; i < wanted; i++) accepts.add(CompletableFuture.supplyAsync(this::accept, executor));
+            RuntimeException failure = null;
+            for (var accept : accepts) {
+                try {
+                    var session = accept.join();
+                    if (session == null) noFreeSession = true;
+                    else admit(session);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                var cause = failure.getCause() != null ? failure.getCause() : failure;
+                LogUtils.log("Error accepting a session of %s: %s", entity.path(), cause.getMessage());
+                releaseAll();
+                endPass();
+                throw new IllegalStateException("Unable to accept a session of " + entity.path() + ": " + cause.getMessage(), cause);
+            }
+        }
+    }
+
+    private void admit(ServiceBusReceiverClient session) {
+        var id = session.getSessionId();
+        if (done.contains(id) || pool.stream().anyMatch(open -> open.id().equals(id))) {
+            held.add(session);
+            return;
+        }
+        pool.add(new Open(session, cursors.getOrDefault(id, 0L)));
+    }
+
+    /** Peeks, in parallel, the next page of every pooled session whose buffer ran empty. */
+    private void refill(int size) {
+        var peeks = new ArrayList<CompletableFuture<Void>>();
+        for (var open : pool) {
+            if (!open.buffer.isEmpty() || open.ended) continue;
+            int limit = Math.min(Math.max(size, Constants.PEEK_SIZE), Constants.SESSION_PEEK_LIMIT - open.count);
+            peeks.add(CompletableFuture.runAsync(() -> peek(open, limit), executor));
+        }
+        CompletableFuture.allOf(peeks.toArray(CompletableFuture[]::new)).join();
+        for (var it = pool.iterator(); it.hasNext(); ) {
+            var open = it.next();
+            if (open.ended && open.buffer.isEmpty()) {
+                it.remove();
+                finish(open);
+            }
+        }
+    }
+
+    private void peek(Open open, int limit) {
+        if (limit <= 0) {
+            open.ended = true;
+            open.more = true;
+            return;
+        }
+        try {
+            var page = open.client.peekMessages(limit, open.peekFrom).stream().toList();
+            if (page.isEmpty()) {
+                open.ended = true;
+                return;
+            }
+            open.buffer.addAll(page);
+            open.count += page.size();
+            open.peekFrom = page.get(page.size() - 1).getSequenceNumber() + 1;
+        } catch (Exception e) {
+            LogUtils.log("Error browsing session %s of %s: %s", open.id(), entity.path(), e.getMessage());
+            open.ended = true;
+            open.more = true;
+        }
+    }
+
+    /**
+     * Hands out up to {@code size} messages, always the lowest sequence number among the pooled sessions' next ones.
+     * Stops when a session that may have more runs out of peeked messages, since its next one could come first.
+     */
+    private List<ServiceBusReceivedMessage> merge(int size) {
+        var page = new ArrayList<ServiceBusReceivedMessage>(size);
+        while (page.size() < size) {
+            Open lowest = null;
+            for (var open : pool) {
+                if (open.buffer.isEmpty()) {
+                    if (!open.ended) return handOut(page);
+                    continue;
+                }
+                if (lowest == null || open.buffer.peekFirst().getSequenceNumber() < lowest.buffer.peekFirst().getSequenceNumber()) {
+                    lowest = open;
+                }
+            }
+            if (lowest == null) break;
+            var msg = lowest.buffer.pollFirst();
+            cursors.put(lowest.id(), msg.getSequenceNumber() + 1);
+            page.add(msg);
+        }
+        return handOut(page);
+    }
+
+    private List<ServiceBusReceivedMessage> handOut(List<ServiceBusReceivedMessage> page) {
+        passMessages += page.size();
+        meter.add(page.size());
+        return page;
+    }
+
+    private void finish(Open open) {
+        String state;
+        try {
+            state = describe(open.client.getSessionState());
+        } catch (Exception e) {
+            state = "";
+        }
+        sessions.add(new SessionInfo(open.id(), open.count, open.more, state));
+        done.add(open.id());
+        release(open.client);
+    }
+
+    /** The next free session, or null when none is free within {@link #ACCEPT_TIMEOUT}; other failures are thrown. */
+    private ServiceBusReceiverClient accept() {
+        try {
+            return client.acceptNextSession();
+        } catch (RuntimeException e) {
+            if (isNoFreeSession(e)) return null;
+            throw e;
+        }
+    }
+
+    private static boolean isNoFreeSession(Throwable e) {
+        for (var t = e; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException) return true;
+            if (t instanceof AmqpException amqp && amqp.getErrorCondition() == AmqpErrorCondition.TIMEOUT_ERROR) return true;
+            var msg = t.getMessage();
+            if (msg != null && msg.contains("Timeout on blocking read")) return true;
+        }
+        return false;
+    }
+
+    /** Releases the pool (its unshown messages are peeked again from the cursors) and the held sessions. */
+    private void releaseAll() {
+        pool.forEach(open -> release(open.client));
+        pool.clear();
+        held.forEach(SessionBrowser::release);
+        held.clear();
+    }
+
+    private static String describe(byte[] state) {
+        if (state == null || state.length == 0) return "";
+        var text = new String(state, StandardCharsets.UTF_8);
+        return text.length() > MAX_STATE_CHARS ? text.substring(0, MAX_STATE_CHARS) + "... (" + state.length + " bytes)" : text;
+    }
+
+    private static void release(ServiceBusReceiverClient session) {
+        try {
+            session.close();
+        } catch (Exception ignored) {
+            // the session lock expires on its own
+        }
+    }
+}
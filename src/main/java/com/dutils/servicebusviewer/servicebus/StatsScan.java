@@ -0,0 +1,118 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.dutils.servicebusviewer.mgr.MainUIMessageTableViewManager;
+import com.dutils.servicebusviewer.utils.LogHistogram;
+import com.dutils.servicebusviewer.utils.MessageUtils.Entity;
+import com.dutils.servicebusviewer.utils.ProgressMeter;
+import com.dutils.servicebusviewer.utils.TopK;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Peeks through a whole entity (or its DLQ) once and keeps only fixed-size aggregates: body size and age
+ * histograms, delivery counts, approximate top subjects and content types, and how many messages expire within
+ * the hour. Memory does not grow with the entity. Pages come from a {@link PeekScan}, and the report is handed
+ * to {@code onReport} every {@link #REPORT_INTERVAL_SEC} seconds and once at the end.
+ */
+public class StatsScan {
+    private static final int REPORT_INTERVAL_SEC = 2;
+    private static final int MAX_DELIVERY_BUCKET = 10;
+    private static final int TOP = 10;
+    private static final Duration EXPIRY_WINDOW = Duration.ofHours(1);
+
+    private final ServiceBusManager mgr;
+    private final Entity entity;
+    private final boolean isDlq;
+    private final ProgressMeter meter;
+    private final OffsetDateTime scanTime = OffsetDateTime.now();
+
+    private final LogHistogram bodySizes = new LogHistogram();
+    private final LogHistogram ages = new LogHistogram();
+    private final long[] deliveryCounts = new long[MAX_DELIVERY_BUCKET + 1];
+    private final TopK subjects = new TopK();
+    private final TopK contentTypes = new TopK();
+    private long expiringSoon;
+    private long expired;
+    private volatile boolean done;
+
+    public StatsScan(ServiceBusManager mgr, Entity entity, boolean isDlq, ProgressMeter meter) {
+        this.mgr = mgr;
+        this.entity = entity;
+        this.isDlq = isDlq;
+        this.meter = meter;
+    }
+
+    /** Scans to the end or until cancelled and returns the final report. */
+    public String run(Consumer<String> onReport) {
+        var scan = new PeekScan(mgr, entity, isDlq, meter);
+        scan.run(this::record, REPORT_INTERVAL_SEC, () -> onReport.accept(report()));
+        done = true;
+        var report = report();
+        onReport.accept(report);
+        scan.throwIfFailed();
+        return report;
+    }
+
+    private synchronized void record(List<ServiceBusReceivedMessage> messages) {
+        var soon = scanTime.plus(EXPIRY_WINDOW);
+        for (var msg : messages) {
+            bodySizes.record(MainUIMessageTableViewManager.getMessageBodySize(msg));
+            if (msg.getEnqueuedTime() != null) ages.record(Duration.between(msg.getEnqueuedTime(), scanTime).toSeconds());
+            deliveryCounts[(int) Math.min(msg.getDeliveryCount(), MAX_DELIVERY_BUCKET)]++;
+            subjects.add(msg.getSubject());
+            contentTypes.add(msg.getContentType());
+            var expiresAt = msg.getExpiresAt();
+            if (expiresAt != null) {
+                if (expiresAt.isBefore(scanTime)) expired++;
+                else if (expiresAt.isBefore(soon)) expiringSoon++;
+            }
+        }
+    }
+
+    /** The aggregates so far, as plain text. */
+    public synchronized String report() {
+        var out = new StringBuilder();
+        long total = meter.total();
+        out.append(String.format("%s%s: %s %,d messages%s%n%n", entity.path(), isDlq ? " (DLQ)" : "",
+                done ? "scanned" : "scanning,", bodySizes.count(),
+                total >= 0 ? String.format(" of ~%,d", total) : ""));
+        out.append(String.format("Body size    min %s  p50 %s  p90 %s  p99 %s  max %s  mean %s%n",
+                bytes(bodySizes.min()), bytes(bodySizes.percentile(0.5)), bytes(bodySizes.percentile(0.9)),
+                bytes(bodySizes.percentile(0.99)), bytes(bodySizes.max()), bytes((long) bodySizes.mean())));
+        out.append(String.format("Age          min %s  p50 %s  p90 %s  p99 %s  max %s%n",
+                age(ages.min()), age(ages.percentile(0.5)), age(ages.percentile(0.9)),
+                age(ages.percentile(0.99)), age(ages.max())));
+        out.append(String.format("Expiring     %,d within %dh, %,d already past expiry%n%n", expiringSoon,
+                EXPIRY_WINDOW.toHours(), expired));
+        out.append("Delivery count\n");
+        for (int i = 0; i <= MAX_DELIVERY_BUCKET; i++) {
+            if (deliveryCounts[i] == 0) continue;
+            out.append(String.format("  %3s%s  %,d%n", i, i == MAX_DELIVERY_BUCKET ? "+" : " ", deliveryCounts[i]));
+        }
+        appendTop(out, "Top subjects (approximate)", subjects);
+        appendTop(out, "Top content types (approximate)", contentTypes);
+        return out.toString();
+    }
+
+    private static void appendTop(StringBuilder out, String title, TopK top) {
+        out.append('\n').append(title).append('\n');
+        for (var entry : top.top(TOP)) out.append(String.format("  %,12d  %s%n", entry.count(), entry.key()));
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    private static String age(long seconds) {
+        if (seconds < 60) return seconds + "s";
+        if (seconds < 3600) return String.format("%dm %ds", seconds / 60, seconds % 60);
+        if (seconds < 86400) return String.format("%dh %dm", seconds / 3600, seconds % 3600 / 60);
+        return String.format("%dd %dh", seconds / 86400, seconds % 86400 / 3600);
+    }
+}
@@ -0,0 +1,65 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Finds the first message enqueued at or after a time without reading the messages before it. A single-message
+ * peek from sequence number {@code s} returns the first message at or after {@code s}, and enqueue times grow
+ * with sequence numbers, so the sequence space is searched in O(log n) peeks: first galloping forward from the
+ * head to bracket the time (the last sequence number isn't known up front), then bisecting the bracket.
+ * On partitioned entities sequence numbers are only ordered within a partition, so the result is approximate there.
+ */
+public class TimeSeek {
+    private final ServiceBusReceiverClient receiver;
+    private int peeks;
+
+    public record Result(long sequenceNumber, int peeks) {
+    }
+
+    public TimeSeek(ServiceBusReceiverClient receiver) {
+        this.receiver = receiver;
+    }
+
+    /** The sequence number to browse from, or -1 when nothing was enqueued at or after {@code time}. */
+    public Result find(OffsetDateTime time) {
+        var head = peek(0);
+        if (head == null) return new Result(-1, peeks);
+        if (!before(head, time)) return new Result(head.getSequenceNumber(), peeks);
+
+        // invariant: the message at lo is before time, the answer (if any) is above lo and at or below hi
+        long lo = head.getSequenceNumber();
+        long step = 1;
+        long hi;
+        while (true) {
+            var probe = peek(lo + step);
+            if (probe == null || !before(probe, time)) {
+                hi = probe == null ? lo + step : probe.getSequenceNumber();
+                break;
+            }
+            lo = probe.getSequenceNumber();
+            step = Math.min(step * 2, Long.MAX_VALUE / 4);
+        }
+        long from = lo + 1;
+        long to = hi;
+        while (from < to) {
+            long mid = from + (to - from) / 2;
+            var probe = peek(mid);
+            if (probe == null || !before(probe, time)) to = mid;
+            else from = probe.getSequenceNumber() + 1;
+        }
+        var found = peek(from);
+        return new Result(found == null ? -1 : found.getSequenceNumber(), peeks);
+    }
+
+    private ServiceBusReceivedMessage peek(long sequenceNumber) {
+        peeks++;
+        return receiver.peekMessage(sequenceNumber);
+    }
+
+    private static boolean before(ServiceBusReceivedMessage msg, OffsetDateTime time) {
+        return msg.getEnqueuedTime() != null && msg.getEnqueuedTime().isBefore(time);
+    }
+}
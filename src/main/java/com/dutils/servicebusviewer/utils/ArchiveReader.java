@@ -0,0 +1,119 @@
+package com.dutils.servicebusviewer.utils;
+
+import com.dutils.servicebusviewer.model.ArchivedMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads an archive written by {@link ArchiveWriter} through its index: the footer locates the index, and each block
+ * can then be read on its own and decoded on any thread with {@link #decode}, without touching the blocks before it.
+ */
+public class ArchiveReader implements Closeable {
+    private final FileChannel channel;
+    private final List<ArchiveWriter.Block> blocks;
+    private final long indexOffset;
+
+    public ArchiveReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.indexOffset = readFooter();
+            this.blocks = readIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public List<ArchiveWriter.Block> blocks() {
+        return blocks;
+    }
+
+    /** Number of records in the archive. */
+    public long count() {
+        return blocks.stream().mapToLong(ArchiveWriter.Block::count).sum();
+    }
+
+    /** The compressed bytes of block {@code i}; positional, so safe to call from several threads. */
+    public byte[] read(int i) throws IOException {
+        long start = blocks.get(i).offset();
+        long end = i + 1 < blocks.size() ? blocks.get(i + 1).offset() : indexOffset;
+        return read(start, (int) (end - start));
+    }
+
+    /** Decompresses and parses one block read by {@link #read(int)}. */
+    public static List<ArchivedMessage> decode(byte[] block) throws IOException {
+        var records = new ArrayList<ArchivedMessage>();
+        try (var lines = lines(block)) {
+            for (var line = lines.readLine(); line != null; line = lines.readLine()) {
+                if (!line.isBlank()) records.add(JsonFileUtil.fromBytes(line.getBytes(StandardCharsets.UTF_8), ArchivedMessage.class));
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long readFooter() throws IOException {
+        long size = channel.size();
+        if (size < ArchiveWriter.FOOTER_MEMBER) throw new IOException("Not a message archive (too short)");
+        long start = size - ArchiveWriter.FOOTER_MEMBER;
+        JsonNode offset;
+        try {
+            offset = JsonFileUtil.fromBytes(readLine(read(start, ArchiveWriter.FOOTER_MEMBER)), JsonNode.class).get(ArchiveWriter.FOOTER_KEY);
+        } catch (IOException e) {
+            offset = null;
+        }
+        if (offset == null) throw new IOException("Not a message archive (no index footer)");
+        long indexOffset = Long.parseUnsignedLong(offset.asText(), 16);
+        if (indexOffset < 0 || indexOffset > start) throw new IOException("Not a message archive (bad index offset)");
+        return indexOffset;
+    }
+
+    private List<ArchiveWriter.Block> readIndex() throws IOException {
+        long end = channel.size() - ArchiveWriter.FOOTER_MEMBER;
+        var index = JsonFileUtil.fromBytes(readLine(read(indexOffset, (int) (end - indexOffset))), JsonNode.class);
+        var entries = index.get(ArchiveWriter.INDEX_KEY);
+        if (entries == null) throw new IOException("Not a message archive (no index)");
+        var blocks = new ArrayList<ArchiveWriter.Block>(entries.size());
+        for (var entry : entries) {
+            blocks.add(new ArchiveWriter.Block(entry.get("offset").asLong(), entry.get("first").asLong(),
+                    entry.get("last").asLong(), entry.get("count").asInt()));
+        }
+        return blocks;
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Archive is truncated");
+        }
+        return buffer.array();
+    }
+
+    private static byte[] readLine(byte[] member) throws IOException {
+        try (var lines = lines(member)) {
+            var line = lines.readLine();
+            return line == null ? new byte[0] : line.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static BufferedReader lines(byte[] member) throws IOException {
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(member)), StandardCharsets.UTF_8));
+    }
+}
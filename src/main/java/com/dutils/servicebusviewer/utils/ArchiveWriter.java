@@ -0,0 +1,152 @@
+package com.dutils.servicebusviewer.utils;
+
+import com.dutils.servicebusviewer.model.ArchivedMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a message archive: a gzip file of NDJSON, one {@link ArchivedMessage} per line, so {@code zcat} and any
+ * line-based tool can read it. Records are compressed in blocks, each its own gzip member, and the file ends with two
+ * more members: an {@code {"$index":[...]}} line giving the offset and sequence range of every block, and a fixed-size
+ * {@code {"$footer":"<hex offset of the index>"}} line, so a reader can find any sequence number without
+ * decompressing the blocks before it.
+ * <p>
+ * Blocks are encoded by {@link #encode} on any thread; {@link #append} only copies them into a large buffer that is
+ * written when full, and the file is forced once in {@link #finish} before it is moved into place.
+ */
+public class ArchiveWriter implements Closeable {
+    public static final String INDEX_KEY = "$index";
+    public static final String FOOTER_KEY = "$footer";
+    // {"$footer":"0123456789abcdef"}\n
+    public static final int FOOTER_PAYLOAD = 31;
+    // gzip header, one stored deflate block, crc and size
+    public static final int FOOTER_MEMBER = 10 + 5 + FOOTER_PAYLOAD + 8;
+    private static final int GROUP_BYTES = 4 * 1024 * 1024;
+
+    /** A compressed block: one gzip member of {@code count} records with sequence numbers {@code first..last}. */
+    public record Encoded(byte[] bytes, long first, long last, int count) {
+    }
+
+    /** Where a block starts in the file and which records it holds. */
+    public record Block(long offset, long first, long last, int count) {
+    }
+
+    private final Path target;
+    private final Path part;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(GROUP_BYTES);
+    private final List<Block> index = new ArrayList<>();
+    private long position;
+    private long count;
+    private boolean finished;
+
+    public ArchiveWriter(Path target) throws IOException {
+        this.target = target;
+        this.part = target.resolveSibling(target.getFileName() + ".part");
+        this.channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /** Serializes and compresses one block; thread-safe, so blocks can be encoded in parallel. */
+    public static Encoded encode(List<ArchivedMessage> records) throws IOException {
+        var out = new ByteArrayOutputStream(records.size() * 512);
+        try (var gzip = new GZIPOutputStream(out, 64 * 1024)) {
+            for (var record : records) {
+                gzip.write(JsonFileUtil.toBytes(record));
+                gzip.write('\n');
+            }
+        }
+        return new Encoded(out.toByteArray(), records.getFirst().sequenceNumber(), records.getLast().sequenceNumber(), records.size());
+    }
+
+    /** Appends blocks in the order they should appear in the archive. */
+    public void append(Encoded block) throws IOException {
+        long offset = position;
+        write(block.bytes());
+        index.add(new Block(offset, block.first(), block.last(), block.count()));
+        count += block.count();
+    }
+
+    /** Writes the index and footer, forces the file and moves it over the target. */
+    public void finish() throws IOException {
+        long indexOffset = position;
+        write(gzip(JsonFileUtil.toBytes(Map.of(INDEX_KEY, index))));
+        var footer = String.format("{\"%s\":\"%016x\"}\n", FOOTER_KEY, indexOffset).getBytes(StandardCharsets.US_ASCII);
+        write(storedMember(footer));
+        flush();
+        channel.force(true);
+        channel.close();
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long size() {
+        return position;
+    }
+
+    /** Closing before {@link #finish} deletes the partial file. */
+    @Override
+    public void close() throws IOException {
+        if (finished) return;
+        channel.close();
+        Files.deleteIfExists(part);
+    }
+
+    /** Buffers or writes {@code bytes}; {@link #position} only moves once they are accepted, so the index stays exact. */
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity()) {
+            flush();
+            var wrapped = ByteBuffer.wrap(bytes);
+            while (wrapped.hasRemaining()) channel.write(wrapped);
+        } else {
+            if (bytes.length > buffer.remaining()) flush();
+            buffer.put(bytes);
+        }
+        position += bytes.length;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+            gzip.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    /** A gzip member holding {@code data} uncompressed, so its size is known in advance. */
+    private static byte[] storedMember(byte[] data) {
+        var crc = new CRC32();
+        crc.update(data);
+        var member = ByteBuffer.allocate(FOOTER_MEMBER).order(ByteOrder.LITTLE_ENDIAN);
+        member.put(new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+        member.put((byte) 1).putShort((short) data.length).putShort((short) ~data.length);
+        member.put(data);
+        member.putInt((int) crc.getValue()).putInt(data.length);
+        return member.array();
+    }
+}
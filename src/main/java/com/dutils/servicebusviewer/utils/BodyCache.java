@@ -0,0 +1,183 @@
+package com.dutils.servicebusviewer.utils;
+
+import com.azure.core.amqp.models.AmqpMessageBodyType;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoded message bodies, so the table and the message dialog decode a body once instead of on every use.
+ * Entries are keyed by the entity the message was peeked from ({@link Scope}), its sequence number and message id,
+ * and evicted least recently used first once they pass {@link Constants#BODY_CACHE_LIMIT_MB}. Sequence numbers are
+ * only unique within an entity, and a dead-lettered message keeps its number, so the scope keeps them apart.
+ * The content type shown in the dialog is detected on first request and kept with the text.
+ */
+public class BodyCache {
+    private static final long LIMIT = Constants.BODY_CACHE_LIMIT_MB * 1024L * 1024L;
+    private static final Map<Key, Body> BODIES = new LinkedHashMap<>(64, 0.75f, true);
+    private static long bytes;
+
+    /** Where a message was peeked from; {@code entityPath} is the queue or {@code topic/subscriptions/name}. */
+    public record Scope(String namespace, String entityPath, boolean deadLetter) {
+        private static final String DLQ_SUFFIX = "/$deadletterqueue";
+
+        public static Scope of(ServiceBusReceiverClient receiver) {
+            var path = receiver.getEntityPath();
+            boolean deadLetter = path.toLowerCase().endsWith(DLQ_SUFFIX);
+            return new Scope(receiver.getFullyQualifiedNamespace(),
+                    deadLetter ? path.substring(0, path.length() - DLQ_SUFFIX.length()) : path, deadLetter);
+        }
+    }
+
+    private record Key(Scope scope, long sequenceNumber, String messageId) {
+    }
+
+    /**
+     * A decoded body; {@link #type()} is "JSON", "XML" or "Raw", detected once. {@link #raw()} keeps the original
+     * bytes when the text does not encode back to them as UTF-8 (another charset, a byte order mark, binary data),
+     * so a resend sends the body it was read from rather than the text.
+     */
+    public static final class Body {
+        private final String text;
+        private final byte[] raw;
+        private volatile String type;
+
+        private Body(String text, byte[] raw) {
+            this.text = text;
+            this.raw = raw;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        /** The original bytes, or null when they are the UTF-8 encoding of {@link #text()}. */
+        public byte[] raw() {
+            return raw;
+        }
+
+        public String type() {
+            var detected = type;
+            if (detected == null) type = detected = Utils.detectType(text);
+            return detected;
+        }
+
+        private long bytes() {
+            return 2L * text.length() + (raw != null ? raw.length : 0);
+        }
+    }
+
+    /** The cached body of a message peeked from {@code scope}; with no scope it is decoded and not kept. */
+    public static Body get(Scope scope, ServiceBusReceivedMessage message) {
+        if (scope == null) return decode(message);
+        var key = new Key(scope, message.getSequenceNumber(), message.getMessageId());
+        var body = lookup(key);
+        return body != null ? body : put(key, decode(message));
+    }
+
+    /** The decoded body without touching the cache, for one-off passes over many messages such as ingest. */
+    public static Body peek(ServiceBusReceivedMessage message) {
+        return decode(message);
+    }
+
+    /** The entry for a body that is already text, such as the spilled copy of a message that is gone. */
+    public static Body get(Scope scope, long sequenceNumber, String messageId, String text, byte[] raw) {
+        var fresh = new Body(text != null ? text : "", raw);
+        if (scope == null) return fresh;
+        var key = new Key(scope, sequenceNumber, messageId);
+        var body = lookup(key);
+        return body != null ? body : put(key, fresh);
+    }
+
+    private static synchronized Body lookup(Key key) {
+        return BODIES.get(key);
+    }
+
+    private static synchronized Body put(Key key, Body body) {
+        // two threads may decode the same body; keep the first so its detected type is shared
+        var existing = BODIES.putIfAbsent(key, body);
+        if (existing != null) return existing;
+        bytes += body.bytes();
+        for (Iterator<Body> it = BODIES.values().iterator(); bytes > LIMIT && it.hasNext(); ) {
+            bytes -= it.next().bytes();
+            it.remove();
+        }
+        return body;
+    }
+
+    private static Body decode(ServiceBusReceivedMessage message) {
+        var amqpBody = message.getRawAmqpMessage().getBody();
+        AmqpMessageBodyType bodyType = amqpBody.getBodyType();
+        return switch (bodyType) {
+            case DATA -> {
+                var bytes = message.getBody().toBytes();
+                var text = decode(bytes, message.getContentType());
+                yield new Body(text, Arrays.equals(text.getBytes(StandardCharsets.UTF_8), bytes) ? null : bytes);
+            }
+            case VALUE -> {
+                Object value = amqpBody.getValue();
+                yield new Body(value != null ? value.toString() : "", null);
+            }
+            case SEQUENCE -> {
+                List<?> sequence = amqpBody.getSequence();
+                yield new Body(sequence != null ? sequence.toString() : "", null);
+            }
+        };
+    }
+
+    /**
+     * Decodes with the charset named by the content type, else the byte order mark, else UTF-8. Bytes that are not
+     * valid UTF-8 are shown as ISO-8859-1, which keeps every byte rather than replacing it; {@link Body#raw()} keeps
+     * the bytes themselves for resending.
+     */
+    static String decode(byte[] bytes, String contentType) {
+        var declared = declaredCharset(contentType);
+        if (declared != null) return new String(bytes, declared);
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) return new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8);
+        if (startsWith(bytes, 0xFE, 0xFF)) return new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16BE);
+        if (startsWith(bytes, 0xFF, 0xFE)) return new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16LE);
+        try {
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static Charset declaredCharset(String contentType) {
+        if (contentType == null) return null;
+        for (var param : contentType.split(";")) {
+            var pair = param.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+                try {
+                    return Charset.forName(pair[1].trim().replace("\"", ""));
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int... prefix) {
+        if (bytes.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) return false;
+        }
+        return true;
+    }
+}
@@ -3,4 +3,46 @@ package com.dutils.servicebusviewer.utils;
 public class Constants {
 
     public static int  PEEK_SIZE = 10;
+    public static int MAX_PEEK_SIZE = 250;
+    // disk spill of browsed messages per table, beyond it opened messages are peeked again
+    public static int MESSAGE_SPILL_LIMIT_MB = 1024;
+    // longer bodies are only searchable by their first part
+    public static int SEARCH_MAX_BODY_CHARS = 1 << 20;
+    // distinct terms indexed per browse; tokens first seen after that are not searchable
+    public static int SEARCH_MAX_TERMS = 250_000;
+    // heap kept by browses of entities that are no longer shown, least recently shown are dropped first
+    public static int PAGE_CACHE_LIMIT_MB = 256;
+    // disk spill kept open by those browses, checked alongside PAGE_CACHE_LIMIT_MB
+    public static int PAGE_CACHE_SPILL_LIMIT_MB = 1024;
+    // decoded bodies shared by the message dialog, formatting and saves
+    public static int BODY_CACHE_LIMIT_MB = 64;
+    // follow mode polls between these intervals and keeps the newest FOLLOW_MAX_ROWS rows
+    public static int FOLLOW_MIN_INTERVAL_MS = 500;
+    public static int FOLLOW_MAX_INTERVAL_MS = 15000;
+    public static int FOLLOW_MAX_ROWS = 10000;
+
+    public static int RESTORE_RECEIVE_BATCH = 100;
+    public static int RESTORE_SEND_CONCURRENCY = 4;
+    public static int RESTORE_COMPLETE_CONCURRENCY = 32;
+    public static int MOVE_CONCURRENCY = 16;
+    // unrelated messages a selective restore/delete/dead-letter may keep locked to reach its targets; each is abandoned afterwards
+    public static int SELECTIVE_MAX_LOCKS = 5000;
+    // batch sends in flight during an import of saved or archived messages
+    public static int IMPORT_SEND_CONCURRENCY = 4;
+    public static int DEAD_LETTER_RECEIVERS = 4;
+    public static int MAX_JOBS_PER_NAMESPACE = 3;
+    // sessions a session browse holds open and peeks at once
+    public static int SESSION_BROWSE_CONCURRENCY = 8;
+    // sessions visited per pass of a session browse
+    public static int SESSION_BROWSE_MAX_SESSIONS = 256;
+    // sessions offered again within a pass that a session browse holds until the pass ends
+    public static int SESSION_BROWSE_MAX_LINKS = 256;
+    public static int SESSION_PEEK_LIMIT = 1000;
+    // distinct reason/description/source groups kept by a DLQ triage, the rest are counted together
+    public static int TRIAGE_MAX_GROUPS = 500;
+    // body hashes and duplicate sequence numbers kept by a duplicate scan
+    public static int DUPLICATE_SCAN_MEMORY_MB = 128;
+    // messages per second, 0 = no cap
+    public static int RATE_LIMIT_PER_ENTITY = 0;
+    public static int RATE_LIMIT_PER_NAMESPACE = 0;
 }
@@ -9,8 +9,10 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.DialogPane;
 import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.stage.Window;
 
 import java.io.File;
 import java.io.IOException;
@@ -85,4 +87,24 @@ public class DialogUtils {
         }
         return selectedDir;
     }
+
+    /** Asks for a message archive (*.ndjson.gz) to write, starting from {@code initialName}. */
+    public static File archiveSaveChooser(String title, Window owner, String initialName) {
+        FileChooser chooser = archiveChooser(title);
+        chooser.setInitialFileName(initialName);
+        return chooser.showSaveDialog(owner);
+    }
+
+    public static File archiveOpenChooser(String title, Window owner) {
+        return archiveChooser(title).showOpenDialog(owner);
+    }
+
+    private static FileChooser archiveChooser(String title) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle(title);
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Message Archives", "*.ndjson.gz", "*.gz"),
+                new FileChooser.ExtensionFilter("All Files", "*.*"));
+        return chooser;
+    }
 }
@@ -0,0 +1,76 @@
+package com.dutils.servicebusviewer.utils;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces UI updates from background threads. Producers push into a lock-free queue, and an
+ * {@link AnimationTimer} drains it at most once per pulse, handing everything queued so far to the sink
+ * in a single call. The timer only runs while there is something to drain.
+ */
+public class FxBatcher<T> {
+    private final Consumer<List<T>> sink;
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain();
+        }
+    };
+
+    public FxBatcher(Consumer<List<T>> sink) {
+        this.sink = sink;
+    }
+
+    public void add(T item) {
+        queue.add(item);
+        schedule();
+    }
+
+    public void addAll(Collection<? extends T> items) {
+        queue.addAll(items);
+        schedule();
+    }
+
+    /** Runs {@code callback} on the FX thread once everything queued before it has reached the sink. */
+    public void then(Runnable callback) {
+        callbacks.add(callback);
+        schedule();
+    }
+
+    /** Drops pending items; only call on the FX thread. */
+    public void clear() {
+        queue.clear();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) Platform.runLater(timer::start);
+    }
+
+    /** Callbacks are taken before the items so every item queued ahead of a callback is in this drain. */
+    private void drain() {
+        List<Runnable> ready = new ArrayList<>();
+        for (Runnable callback; (callback = callbacks.poll()) != null; ) ready.add(callback);
+        List<T> batch = new ArrayList<>();
+        for (T item; (item = queue.poll()) != null; ) batch.add(item);
+        try {
+            if (!batch.isEmpty()) sink.accept(batch);
+        } finally {
+            ready.forEach(Runnable::run);
+        }
+        if (queue.isEmpty() && callbacks.isEmpty()) {
+            timer.stop();
+            scheduled.set(false);
+            if ((!queue.isEmpty() || !callbacks.isEmpty()) && scheduled.compareAndSet(false, true)) timer.start();
+        }
+    }
+}
@@ -55,6 +55,15 @@ public class JsonFileUtil {
             }
         }
     }
+    /** Compact (unindented) encoding, used where JSON is stored rather than read by people. */
+    public static byte[] toBytes(Object obj) throws IOException {
+        return mapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsBytes(obj);
+    }
+
+    public static <T> T fromBytes(byte[] bytes, Class<T> type) throws IOException {
+        return mapper.readValue(bytes, type);
+    }
+
     public static void writeToFile( String file,Object obj) throws IOException {
         writeToFile( new File(file),obj);
     }
@@ -0,0 +1,67 @@
+package com.dutils.servicebusviewer.utils;
+
+/**
+ * Fixed-size histogram of non-negative longs in the style of HdrHistogram: values below 128 are counted exactly,
+ * larger ones in 64 buckets per power of two, so any recorded value is reported within about 1.6%.
+ * Covers the whole long range in under 4,000 counters whatever the number of values recorded. Not thread-safe.
+ */
+public class LogHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int HALF = SUB / 2;
+
+    private final long[] counts = new long[SUB + (Long.SIZE - SUB_BITS) * HALF];
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long min() {
+        return total == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /** The value at quantile {@code q} (0..1), as the lower bound of its bucket; exact values are clamped to min/max. */
+    public long percentile(double q) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, Math.max(min, lowerBound(i)));
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB) return (int) value;
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1);
+        return SUB + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB) return index;
+        int shift = (index - SUB) / HALF + 1;
+        return (long) ((index - SUB) % HALF + HALF) << shift;
+    }
+}
@@ -1,7 +1,6 @@
 package com.dutils.servicebusviewer.utils;
 
 import com.dutils.servicebusviewer.config.ApplicationContext;
-import javafx.application.Platform;
 import javafx.scene.paint.Color;
 
 public class LogUtils {
@@ -10,8 +9,7 @@ public class LogUtils {
     }
 
     public static void log(String msg, Color color, Utils.Type type) {
-        var logComponent = ApplicationContext.getInstance().getMainUIController();
-        Platform.runLater(() -> logComponent.log(msg + System.lineSeparator()));
+        ApplicationContext.getInstance().getMainUIController().log(msg + System.lineSeparator());
     }
 
     public static void log(String msg, Utils.Type type) {
@@ -26,6 +24,14 @@ public class LogUtils {
         String log = String.format(msg, values);
         log(log, null, Utils.Type.GENERAL);
     }
+    /** Logs an in-progress line and mirrors it in the status bar progress label. */
+    public static void progress(String msg, Object... values) {
+        String text = String.format(msg, values);
+        // already formatted: a '%' coming from the values must not be read as a format specifier again
+        log("InProgress: " + text, null, Utils.Type.GENERAL);
+        ApplicationContext.getInstance().getMainUIController().updateProgress(text);
+    }
+
     public static void clearLogs() {
         ApplicationContext.getInstance().getMainUIController().logNode.clear();
     }
@@ -0,0 +1,137 @@
+package com.dutils.servicebusviewer.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing set of non-negative longs (sequence numbers) backed by a single {@code long[]}.
+ * Avoids boxing so a 100k-row selection costs about 2MB instead of a HashSet's ~6MB.
+ */
+public class LongHashSet {
+    private static final long EMPTY = -1L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    public static LongHashSet of(Iterable<Long> values) {
+        var set = new LongHashSet();
+        values.forEach(set::add);
+        return set;
+    }
+
+    public boolean add(long key) {
+        checkKey(key);
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) return false;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if (++size > keys.length * LOAD_FACTOR) rehash(keys.length << 1);
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key < 0) return false;
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean remove(long key) {
+        if (key < 0) return false;
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                shiftBack(i);
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(LongConsumer action) {
+        for (long key : keys) {
+            if (key != EMPTY) action.accept(key);
+        }
+    }
+
+    public long max() {
+        long max = EMPTY;
+        for (long key : keys) max = Math.max(max, key);
+        return max;
+    }
+
+    public long[] toArray() {
+        long[] out = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) out[n++] = key;
+        }
+        return out;
+    }
+
+    /** Backward-shift deletion keeps probe chains intact without tombstones. */
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long key = keys[i];
+            if (key == EMPTY) break;
+            int home = slot(key);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = key;
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        for (long key : old) {
+            if (key == EMPTY) continue;
+            int i = slot(key);
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = key;
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static void checkKey(long key) {
+        if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+    }
+}
@@ -0,0 +1,63 @@
+package com.dutils.servicebusviewer.utils;
+
+/**
+ * Fixed-capacity open-addressing map from non-zero long keys (hashes) to long values, backed by two arrays.
+ * Sized once for a memory budget and never resized: {@link #put} reports false once the map is full,
+ * so a scan over millions of messages stays within the budget. Not thread-safe.
+ */
+public class LongLongMap {
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.7f;
+    // two longs per slot
+    private static final int SLOT_BYTES = 16;
+
+    private final long[] keys;
+    private final long[] values;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    /** A map whose arrays take at most {@code budgetBytes}. */
+    public static LongLongMap withBudget(long budgetBytes) {
+        long slots = Math.max(16, Math.min(1L << 30, budgetBytes / SLOT_BYTES));
+        return new LongLongMap(Long.highestOneBit(slots));
+    }
+
+    private LongLongMap(long capacity) {
+        keys = new long[(int) capacity];
+        values = new long[(int) capacity];
+        mask = (int) capacity - 1;
+        maxSize = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /** The value for {@code key}, or {@code missing} when absent. */
+    public long get(long key, long missing) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+            if (keys[i] == EMPTY) return missing;
+        }
+    }
+
+    /** Adds or replaces; false when {@code key} is new and the map is full. */
+    public boolean put(long key, long value) {
+        if (key == EMPTY) throw new IllegalArgumentException("0 is reserved");
+        int i = slot(key);
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        if (keys[i] == EMPTY) {
+            if (size >= maxSize) return false;
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
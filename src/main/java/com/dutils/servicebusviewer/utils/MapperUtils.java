@@ -5,13 +5,17 @@ import com.azure.messaging.servicebus.ServiceBusMessage;
 import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
 import com.dutils.servicebusviewer.model.ServiceBusMessageData;
 
-import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class MapperUtils {
 
     public static ServiceBusMessageData toServiceBusMessageData(ServiceBusReceivedMessage original) {
+        return toServiceBusMessageData(original, null);
+    }
+
+    /** With a {@code scope} the decoded body is kept in the {@link BodyCache}; bulk ingest passes none. */
+    public static ServiceBusMessageData toServiceBusMessageData(ServiceBusReceivedMessage original, BodyCache.Scope scope) {
         if (original == null) return null;
         ServiceBusMessageData data = new ServiceBusMessageData();
         data.setMessageId(original.getMessageId());
@@ -29,17 +33,16 @@ public class MapperUtils {
         if (original.getApplicationProperties() != null) {
             data.getApplicationProperties().putAll(original.getApplicationProperties());
         }
-        try {
-            data.setBody(MessageUtils.extractBody(original));
-        } catch (IOException e) {
-            LogUtils.log("Exception Occured: %s", e.getMessage());
-        }
+        var body = BodyCache.get(scope, original);
+        data.setBody(body.text());
+        data.setRawBody(body.raw());
         return data;
     }
 
     public static ServiceBusMessage toServiceBusMessage(ServiceBusMessageData data) {
         if (data == null) return null;
-        BinaryData bodyData = data.getBody() != null ? BinaryData.fromString(data.getBody()) : BinaryData.fromBytes(new byte[0]);
+        BinaryData bodyData = data.getRawBody() != null ? BinaryData.fromBytes(data.getRawBody())
+                : data.getBody() != null ? BinaryData.fromString(data.getBody()) : BinaryData.fromBytes(new byte[0]);
         ServiceBusMessage msg = new ServiceBusMessage(bodyData);
 
         if (data.getMessageId() != null) msg.setMessageId(data.getMessageId());
@@ -1,6 +1,5 @@
       package com.dutils.servicebusviewer.utils;
 
-import com.azure.core.amqp.models.AmqpMessageBodyType;
 import com.azure.core.util.BinaryData;
 import com.azure.messaging.servicebus.ServiceBusMessage;
 import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
@@ -10,217 +9,361 @@ import com.dutils.servicebusviewer.config.ApplicationContext;
 import com.dutils.servicebusviewer.model.DataTreeItem;
 import com.dutils.servicebusviewer.model.NodeType;
 import com.dutils.servicebusviewer.model.ServiceBusMessageData;
+import com.dutils.servicebusviewer.model.MessageFilter;
+import com.dutils.servicebusviewer.model.MessageRow;
+import com.dutils.servicebusviewer.servicebus.ArchiveExport;
+import com.dutils.servicebusviewer.servicebus.DeadLetterEngine;
+import com.dutils.servicebusviewer.servicebus.DlqTriage;
+import com.dutils.servicebusviewer.servicebus.DuplicateScan;
+import com.dutils.servicebusviewer.servicebus.FilteredOperation;
+import com.dutils.servicebusviewer.servicebus.MessageImport;
+import com.dutils.servicebusviewer.servicebus.MessageMover;
+import com.dutils.servicebusviewer.servicebus.PurgeEngine;
+import com.dutils.servicebusviewer.servicebus.RateGovernor;
+import com.dutils.servicebusviewer.servicebus.RestorePipeline;
+import com.dutils.servicebusviewer.servicebus.SelectiveOperation;
+import com.dutils.servicebusviewer.servicebus.ServiceBusManager;
+import com.dutils.servicebusviewer.servicebus.StatsScan;
 import javafx.scene.control.TreeItem;
 import org.apache.commons.lang3.time.StopWatch;
-import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import static com.azure.messaging.servicebus.models.ServiceBusReceiveMode.PEEK_LOCK;
-import static com.azure.messaging.servicebus.models.ServiceBusReceiveMode.RECEIVE_AND_DELETE;
 import static com.dutils.servicebusviewer.utils.MapperUtils.toServiceBusMessage;
 import static com.dutils.servicebusviewer.utils.Utils.fd;
 
 public class MessageUtils {
-    public static int BATCH_SIZE = 2;
-    public static int TIME_OUT_SEC = 5;
+    static final Duration ASYNC_IDLE_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration ASYNC_MAX_LOCK_RENEWAL = Duration.ofMinutes(10);
+    private static final int ASYNC_COMPLETE_RETRIES = 3;
+    private static final Duration ASYNC_COMPLETE_BACKOFF = Duration.ofMillis(500);
 
-
-    public static long receiveMatchAndComplete(ServiceBusReceiverClient receiver,
-                                               BiFunction<ServiceBusReceiverClient, ServiceBusReceivedMessage, Long> completeFunction) {
-        long completedCount = 0;
-        var messages = receiver.receiveMessages(BATCH_SIZE, Duration.ofSeconds(TIME_OUT_SEC));
-        for (ServiceBusReceivedMessage msg : messages) {
-            completedCount += completeFunction.apply(receiver, msg);
-        }
-        return completedCount;
-    }
-
-    static DeadLetterOptions deadLetterOptions = new DeadLetterOptions()
+    public static DeadLetterOptions deadLetterOptions = new DeadLetterOptions()
             .setDeadLetterReason("Manual move")
             .setDeadLetterErrorDescription("Moved by Service Bus Viewer");
 
 
-    public static List<ServiceBusReceivedMessage> moveMessagesAsyncToQueue(
-            TreeItem<DataTreeItem> item,
-            List<ServiceBusReceivedMessage> moveMessages) {
-        List<ServiceBusReceivedMessage> removedMessages = new ArrayList<>();
-        AtomicInteger processedCount = new AtomicInteger();
+    /**
+     * Moves the selected DLQ messages back to their entity without blocking any Reactor thread.
+     * Up to {@link Constants#MOVE_CONCURRENCY} send+complete chains run at once, each delayed as the entity's
+     * {@link RateGovernor} asks. A throttled send puts its message back to be received and sent again. After a send
+     * went out only the complete is retried, and a message whose complete still fails is put back to be completed,
+     * not sent again, when it returns. Skipped messages stay locked (renewed) until the flow ends, since one abandoned
+     * right away would be delivered straight back, and are then abandoned; at most {@link Constants#SELECTIVE_MAX_LOCKS}
+     * are held. The flow ends once every selected message was handled, once the last one is passed (on non-partitioned
+     * entities, where sequence numbers follow delivery order) and nothing put back is outstanding, at the hold limit,
+     * when the job is cancelled, or when the DLQ stops delivering for {@link #ASYNC_IDLE_TIMEOUT}.
+     * Returns the sequence numbers moved.
+     */
+    public static LongHashSet moveMessagesAsyncToQueue(ServiceBusManager mgr, Entity entity, LongHashSet targets, ProgressMeter meter) {
         var sw = StopWatch.createStarted();
-        var entity = parseNode(item);
-        var mgr = ApplicationContext.getInstance().currentManager();
-        CountDownLatch countdownLatch = new CountDownLatch(1);
+        var index = new LongHashSet(targets.size());
+        targets.forEach(index::add);
+        int targetCount = index.size();
+        long maxTarget = index.max();
+        boolean ordered = !mgr.isPartitioned(entity.type, entity.name);
+        var governor = RateGovernor.of(mgr.getNamespace(), entity);
+        var moved = new LongHashSet(targetCount);
+        // targets put back for another attempt (also still in index), and those of them that only need their complete
+        var requeued = new LongHashSet();
+        var sentOnly = new LongHashSet();
+        var inFlight = new AtomicInteger();
+        var passedEnd = new AtomicBoolean();
+        Sinks.Empty<Void> done = Sinks.empty();
+        Runnable checkDone = () -> {
+            synchronized (index) {
+                if (inFlight.get() == 0 && (index.isEmpty() || (passedEnd.get() && requeued.isEmpty()))) done.tryEmitEmpty();
+            }
+        };
+        List<ServiceBusReceivedMessage> skipped = new ArrayList<>();
+        var renewals = Disposables.composite();
+        meter.setTotal(targetCount);
         try (var receiver = mgr.newAsyncReceiver(entity.type, entity.name, entity.sub, PEEK_LOCK, true)) {
-            var sender = ApplicationContext.getInstance().currentManager().getNewSenderClient(entity.type, entity.name);
-            Disposable subscription = receiver.receiveMessages()
-                    .subscribe(
-                            dlqMsg -> {
-                                try {
-                                    var match = moveMessages.stream()
-                                            .filter(m -> m.getMessageId().equals(dlqMsg.getMessageId()))
-                                            .filter(m -> m.getSequenceNumber() == dlqMsg.getSequenceNumber())
-                                            .findFirst()
-                                            .orElse(null);
-                                    if (match == null) {
-                                        return;
-                                    }
-                                    sender.sendMessage(cloneMessage(dlqMsg));
-                                    moveMessages.remove(match);
-                                    removedMessages.add(match);
-                                    processedCount.incrementAndGet();
-                                    receiver.complete(dlqMsg).block();
-                                    LogUtils.log("Moved message: %s (seq=%d)", dlqMsg.getMessageId(), dlqMsg.getSequenceNumber());
-                                    if (moveMessages.isEmpty()) {
-                                        countdownLatch.countDown();
-                                    }
-                                } catch (Exception e) {
-                                    LogUtils.log("Failed processing message %s: %s", dlqMsg.getMessageId(), e.getMessage());
-                                    receiver.abandon(dlqMsg).block();
-                                }
+            var sender = mgr.getAsyncSenderClient(entity.type, entity.name);
+            BiFunction<ServiceBusReceivedMessage, Boolean, Mono<Void>> putBack = (msg, sent) -> {
+                synchronized (index) {
+                    index.add(msg.getSequenceNumber());
+                    requeued.add(msg.getSequenceNumber());
+                    if (sent) sentOnly.add(msg.getSequenceNumber());
+                }
+                // if the abandon fails the lock runs out and the message comes back all the same
+                return receiver.abandon(msg).onErrorResume(x -> Mono.empty());
+            };
+            receiver.receiveMessages()
+                    .timeout(ASYNC_IDLE_TIMEOUT)
+                    .onErrorResume(TimeoutException.class, e -> Mono.empty())
+                    .takeUntilOther(done.asMono())
+                    .map(dlqMsg -> {
+                        long seq = dlqMsg.getSequenceNumber();
+                        if (ordered && seq >= maxTarget) passedEnd.set(true);
+                        synchronized (index) {
+                            if (index.remove(seq)) {
+                                requeued.remove(seq);
+                                inFlight.incrementAndGet();
+                                return new Received(dlqMsg, true, sentOnly.remove(seq));
                             }
-                    );
-            countdownLatch.await(120, TimeUnit.SECONDS);
-            subscription.dispose();
-            LogUtils.log("Move completed: Source=DLQ, Destination=%s, Messages Moved=%d, Duration=%s seconds.",
-                    entity.name, processedCount.get(), fd(sw));
-            countdownLatch.countDown();
-
+                        }
+                        skipped.add(dlqMsg);
+                        renewals.add(receiver.renewMessageLock(dlqMsg, ASYNC_MAX_LOCK_RENEWAL).onErrorResume(e -> Mono.empty()).subscribe());
+                        checkDone.run();
+                        return new Received(dlqMsg, false, false);
+                    })
+                    .takeUntil(r -> skipped.size() >= Constants.SELECTIVE_MAX_LOCKS || meter.isCancelled())
+                    .filter(Received::target)
+                    .flatMap(r -> {
+                        var msg = r.message();
+                        Mono<Boolean> send = r.sent() ? Mono.just(true) : Mono.delay(Duration.ofNanos(Math.max(0, governor.reserve(1))))
+                                .then(sender.sendMessage(cloneMessage(msg)))
+                                .thenReturn(true)
+                                .onErrorResume(e -> {
+                                    if (governor.deferBackoff(e)) return putBack.apply(msg, false).thenReturn(false);
+                                    LogUtils.log("Failed sending message %s: %s", msg.getMessageId(), e.getMessage());
+                                    return receiver.abandon(msg).onErrorResume(x -> Mono.empty()).thenReturn(false);
+                                });
+                        return send.flatMap(sent -> !sent ? Mono.<ServiceBusReceivedMessage>empty() : receiver.complete(msg)
+                                        .retryWhen(Retry.backoff(ASYNC_COMPLETE_RETRIES, ASYNC_COMPLETE_BACKOFF).filter(governor::deferBackoff))
+                                        .thenReturn(msg)
+                                        .onErrorResume(e -> {
+                                            LogUtils.log("Sent but could not complete message %s, completing it when it comes back: %s",
+                                                    msg.getMessageId(), e.getMessage());
+                                            return putBack.apply(msg, true).then(Mono.empty());
+                                        }))
+                                .doFinally(s -> {
+                                    inFlight.decrementAndGet();
+                                    checkDone.run();
+                                });
+                    }, Constants.MOVE_CONCURRENCY)
+                    .doOnNext(dlqMsg -> {
+                        synchronized (moved) {
+                            moved.add(dlqMsg.getSequenceNumber());
+                        }
+                        meter.add(1);
+                    })
+                    .blockLast();
+            renewals.dispose();
+            Flux.fromIterable(skipped)
+                    .flatMap(m -> receiver.abandon(m).onErrorResume(e -> Mono.empty()), Constants.MOVE_CONCURRENCY)
+                    .blockLast();
+            if (skipped.size() >= Constants.SELECTIVE_MAX_LOCKS && !index.isEmpty()) {
+                LogUtils.log("%d selected messages are behind more than %d other DLQ messages and were left in place",
+                        index.size(), Constants.SELECTIVE_MAX_LOCKS);
+            }
+            if (!sentOnly.isEmpty()) {
+                LogUtils.log("%d messages were sent to %s but are still in the DLQ; delete them from the DLQ to avoid restoring them twice",
+                        sentOnly.size(), entity.name);
+            } else if (!requeued.isEmpty()) {
+                LogUtils.log("%d throttled messages did not come back before the move ended and were left in the DLQ", requeued.size());
+            }
+            LogUtils.log("Move completed: Source=DLQ, Destination=%s, Messages Moved=%d of %d, Duration=%s seconds (%.0f msg/s).",
+                    entity.name, moved.size(), targetCount, fd(sw), meter.averageRate());
         } catch (Exception e) {
+            renewals.dispose();
             LogUtils.log("Error moving messages to queue: %s", e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
         }
-        return removedMessages;
+        return moved;
     }
 
-    public static List<ServiceBusReceivedMessage> moveMessagesToQueue(TreeItem<DataTreeItem> item, List<ServiceBusReceivedMessage> moveMessages) {
-        long count = 0;
-        List<ServiceBusReceivedMessage> removedMessages = new ArrayList<>();
-        var mgr = ApplicationContext.getInstance().currentManager();
-        var entity = parseNode(item);
+    /** {@code sent}: a returning target whose send already went out, so it only needs its complete. */
+    private record Received(ServiceBusReceivedMessage message, boolean target, boolean sent) {
+    }
+
+    public static LongHashSet moveMessagesToQueue(TreeItem<DataTreeItem> item, LongHashSet targets) {
+        return applyToSequences(ApplicationContext.getInstance().currentManager(), parseNode(item), true,
+                SelectiveOperation.Action.RESTORE, targets, new ProgressMeter());
+    }
+
+    /** Applies {@code action} to the messages with the given sequence numbers; returns the ones handled. */
+    public static LongHashSet applyToSequences(ServiceBusManager mgr, Entity entity, boolean isDlq, SelectiveOperation.Action action,
+                                               LongHashSet selected, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
+        var targets = new LongHashSet(selected.size());
+        selected.forEach(targets::add);
         try {
-            var sender = mgr.getSenderClient(entity.type, entity.name);
-            var receiver = mgr.getReceiver(entity.type, entity.name, entity.sub, PEEK_LOCK, true);
-            do {
-                final AtomicInteger receievdCount = new AtomicInteger(0);
-                var completedCount = receiveMatchAndComplete(receiver, (rc, dlqMsg) -> {
-                    System.out.println(dlqMsg.getSequenceNumber());
-                    var match = moveMessages.stream()
-                            .filter(m -> m.getMessageId().equals(dlqMsg.getMessageId()))
-                            .filter(m -> m.getSequenceNumber() == dlqMsg.getSequenceNumber())
-                            .findFirst().orElse(null);
-                    if (match != null) {
-                        sender.sendMessage(cloneMessage(match));
-                        moveMessages.remove(match);
-                        removedMessages.add(match);
-                        return (long) completeMessage(receiver, dlqMsg);
-                    } else {
-                        receiver.abandon(dlqMsg);
-                    }
-                    receievdCount.incrementAndGet();
-                    return 0L;
-                });
-                count = count + completedCount;
-                LogUtils.log("InProgress: Recieved %s Moved %d DLQ messages from %s", receievdCount.get(), count, entity.name);
-                if (receievdCount.get() < BATCH_SIZE || moveMessages.isEmpty()) break;
-            } while (true);
-            LogUtils.log("Completed: Moved to DLQ %d messages from %s", count, entity.name);
-        }
-        catch (Exception e) {
-            LogUtils.log("Error moving messages to queue: %s", e.getMessage());
+            var handled = new SelectiveOperation(mgr, entity, isDlq, action, targets, meter).run();
+            LogUtils.log("%s: %s %d of %d selected messages in %s in %s secs",
+                    handled.size() < selected.size() ? "Incomplete" : "Completed",
+                    action.getLabel(), handled.size(), selected.size(), entity.name, fd(sw));
+            return handled;
+        } catch (Exception e) {
+            LogUtils.log("Error processing selected messages: %s", e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
         }
-        return removedMessages;
     }
 
     public static void moveAllMessagesToQueue(TreeItem<DataTreeItem> item) {
+        moveAllMessagesToQueue(ApplicationContext.getInstance().currentManager(), parseNode(item),
+                RestorePipeline.Options.defaults(), new ProgressMeter());
+    }
+
+    public static void moveAllMessagesToQueue(ServiceBusManager mgr, Entity entity, RestorePipeline.Options options, ProgressMeter meter) {
         StopWatch sw = StopWatch.createStarted();
-        long count = 0, receivedCount;
-        var mgr = ApplicationContext.getInstance().currentManager();
-        var entity = parseNode(item);
         try {
-            var sender = mgr.getSenderClient(entity.type, entity.name);
-            var receiver = mgr.getReceiver(entity.type, entity.name, entity.sub, PEEK_LOCK, true);
-            do {
-                receivedCount = receiveMatchAndComplete(receiver, (rc, msg) -> {
-                    sender.sendMessage(cloneMessage(msg));
-                    return (long) completeMessage(rc, msg);
-                });
-                count = count + receivedCount;
-                LogUtils.log("InProgress: Restored %d DLQ messages from %s ", count, entity.name);
-            } while (receivedCount >= BATCH_SIZE);
-            LogUtils.log("Completed: Restored %d DLQ messages from %s in %s secs", count, entity.name, fd(sw));
+            var pipeline = new RestorePipeline(mgr, entity, options, meter);
+            long count = pipeline.run();
+            LogUtils.log("Completed: Restored %d DLQ messages from %s in %s secs (%.0f msg/s)",
+                    count, entity.name, fd(sw), meter.averageRate());
         } catch (Exception e) {
             LogUtils.log("Error moving messages to queue: %s", e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
     public static void moveAllMessagesToDlq(TreeItem<DataTreeItem> item) {
+        moveAllMessagesToDlq(ApplicationContext.getInstance().currentManager(), parseNode(item),
+                Constants.DEAD_LETTER_RECEIVERS, deadLetterOptions, new ProgressMeter());
+    }
+
+    public static void moveAllMessagesToDlq(ServiceBusManager mgr, Entity entity, int receivers,
+                                            DeadLetterOptions options, ProgressMeter meter) {
         var sw = StopWatch.createStarted();
-        var entity = parseNode(item);
         try {
-            long count = 0, receivedCount;
-            var receiver = ApplicationContext.getInstance().currentManager()
-                    .getReceiver(entity.type, entity.name, entity.sub, PEEK_LOCK, false);
-            do {
-                receivedCount = receiveMatchAndComplete(receiver, (rc, msg) -> {
-                    rc.deadLetter(msg, deadLetterOptions);
-                    return 1L;
-                });
-                count = count + receivedCount;
-                LogUtils.log("InProgress: Moved %d messages from %s", count, entity.name);
-            } while (receivedCount == BATCH_SIZE);
-            LogUtils.log("Competed: Moved Messages %d DLQ messages from %s in %s secs", count, entity.name, fd(sw));
+            var engine = new DeadLetterEngine(mgr, entity, receivers, options, meter);
+            long count = engine.run();
+            LogUtils.log("Completed: Moved %d messages from %s to DLQ in %s secs (%.0f msg/s, %d locks lost)",
+                    count, entity.name, fd(sw), meter.averageRate(), engine.lostLockCount());
         } catch (Exception e) {
             LogUtils.log("Error moving messages to DLQ: %s", e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
     public static void purgeAllMessages(TreeItem<DataTreeItem> item) {
+        purge(ApplicationContext.getInstance().currentManager(), parseNode(item), false, new ProgressMeter());
+    }
+
+    public static void purgeAllDlqMessages(TreeItem<DataTreeItem> item) {
+        purge(ApplicationContext.getInstance().currentManager(), parseNode(item), true, new ProgressMeter());
+    }
+
+    public static void purge(ServiceBusManager mgr, Entity entity, boolean isDlq, ProgressMeter meter) {
         var sw = StopWatch.createStarted();
-        var entity = parseNode(item);
+        var label = isDlq ? "DLQ messages" : "messages";
         try {
-            long count = 0, receivedCount;
-            var receiver = ApplicationContext.getInstance().currentManager()
-                    .getReceiver(entity.type, entity.name, entity.sub, RECEIVE_AND_DELETE, false);
-
-            do {
-                receivedCount = receiveMatchAndComplete(receiver, MessageUtils::addCount);
-                count = count + receivedCount;
-                LogUtils.log("InProgress: Purged %d messages from %s", count, entity.name);
-            } while (receivedCount == BATCH_SIZE);
-            LogUtils.log("Completed: Purged %d   messages from %s in %s secs", count, entity.name, fd(sw));
+            var engine = new PurgeEngine(mgr, entity, isDlq, meter);
+            long count = engine.run();
+            LogUtils.log("Completed: Purged %d %s from %s in %s secs (%.0f msg/s)",
+                    count, label, entity.name, fd(sw), meter.averageRate());
         } catch (Exception e) {
-            LogUtils.log("Error purging messages: %s", e.getMessage());
+            LogUtils.log("Error purging %s: %s", label, e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
-    public static void purgeAllDlqMessages(TreeItem<DataTreeItem> item) {
-        StopWatch sw = StopWatch.createStarted();
-        long count = 0, receivedCount;
-        var entity = parseNode(item);
+    public static void scanStats(ServiceBusManager mgr, Entity entity, boolean isDlq, Consumer<String> onReport, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
         try {
-            var receiver = ApplicationContext.getInstance().currentManager()
-                    .getReceiver(entity.type, entity.name, entity.sub, RECEIVE_AND_DELETE, true);
-            do {
-                receivedCount = receiveMatchAndComplete(receiver, MessageUtils::addCount);
-                count = count + receivedCount;
-                LogUtils.log("InProgress: Purged %d DLQ messages from %s ", count, entity.name);
-            } while (receivedCount >= BATCH_SIZE);
-            LogUtils.log("Completed: Purged  %d DLQ messages from %s in %s secs", count, entity.name, fd(sw));
+            new StatsScan(mgr, entity, isDlq, meter).run(onReport);
+            LogUtils.log("Completed: Scanned %d messages of %s in %s secs (%.0f msg/s)",
+                    meter.count(), entity.path(), fd(sw), meter.averageRate());
         } catch (Exception e) {
-            LogUtils.log("Error purging DLQ messages: %s", e.getMessage());
+            LogUtils.log("Error scanning %s: %s", entity.path(), e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
+    public static void triageDlq(ServiceBusManager mgr, Entity entity, Consumer<List<DlqTriage.Group>> onUpdate, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
+        try {
+            var groups = new DlqTriage(mgr, entity, meter).run(onUpdate);
+            LogUtils.log("Completed: Triaged %d DLQ messages of %s into %d groups in %s secs",
+                    meter.count(), entity.path(), groups.size(), fd(sw));
+        } catch (Exception e) {
+            LogUtils.log("Error triaging DLQ of %s: %s", entity.path(), e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public static List<DuplicateScan.Cluster> findDuplicates(ServiceBusManager mgr, Entity entity, boolean isDlq,
+                                                             Consumer<List<DuplicateScan.Cluster>> onUpdate, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
+        try {
+            var clusters = new DuplicateScan(mgr, entity, isDlq, meter).run(onUpdate);
+            LogUtils.log("Completed: Found %d duplicate bodies among %d messages of %s in %s secs",
+                    clusters.size(), meter.count(), entity.path(), fd(sw));
+            return clusters;
+        } catch (Exception e) {
+            LogUtils.log("Error scanning %s for duplicates: %s", entity.path(), e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public static void exportArchive(ServiceBusManager mgr, Entity entity, boolean isDlq, File file, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
+        try {
+            long count = new ArchiveExport(mgr, entity, isDlq, file.toPath(), meter).run();
+            LogUtils.log("Completed: Exported %d messages of %s to %s (%,d KB) in %s secs (%.0f msg/s)",
+                    count, entity.path(), file.getAbsolutePath(), file.length() / 1024, fd(sw), meter.averageRate());
+        } catch (Exception e) {
+            LogUtils.log("Error exporting %s: %s", entity.path(), e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public static void applyToMatching(ServiceBusManager mgr, Entity entity, boolean isDlq, SelectiveOperation.Action action,
+                                       MessageFilter filter, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
+        try {
+            var operation = new FilteredOperation(mgr, entity, isDlq, action, filter, meter);
+            long count = operation.run();
+            if (operation.leftBehind() > 0) {
+                LogUtils.log("Incomplete: %s %d messages matching %s in %s in %s secs, %d matching messages left in place",
+                        action.getLabel(), count, filter, entity.path(), fd(sw), operation.leftBehind());
+            } else {
+                LogUtils.log("Completed: %s %d messages matching %s in %s in %s secs",
+                        action.getLabel(), count, filter, entity.path(), fd(sw));
+            }
+        } catch (Exception e) {
+            LogUtils.log("Error processing messages matching %s: %s", filter, e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public static long transferMessages(MessageMover.Endpoint source, MessageMover.Endpoint destination,
+                                        MessageMover.Options options, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
+        try {
+            long count = new MessageMover(source, destination, options, meter).run();
+            LogUtils.log("Completed: %s %d messages from %s to %s in %s secs (%.0f msg/s)",
+                    options.mode(), count, source, destination, fd(sw), meter.averageRate());
+            return count;
+        } catch (Exception e) {
+            LogUtils.log("Error transferring messages from %s: %s", source, e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+
+    public static long importMessages(File source, MessageMover.Endpoint destination, MessageImport.Options options, ProgressMeter meter) {
+        var sw = StopWatch.createStarted();
+        try {
+            long count = new MessageImport(source.toPath(), destination, options, meter).run();
+            LogUtils.log("Completed: %s %d messages from %s to %s in %s secs (%.0f msg/s)",
+                    options.dryRun() ? "Counted" : "Imported", count, source.getAbsolutePath(), destination, fd(sw), meter.averageRate());
+            return count;
+        } catch (Exception e) {
+            LogUtils.log("Error importing messages from %s: %s", source.getAbsolutePath(), e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
 
     public static int completeMessage(ServiceBusReceiverClient receiver, ServiceBusReceivedMessage message) {
         int completed = 0;
@@ -247,10 +390,14 @@ public class MessageUtils {
     }
 
     public record Entity(String name, String sub, NodeType type) {
+        /** Display path, e.g. {@code topic/subscription}. */
+        public String path() {
+            return sub == null || sub.isEmpty() ? name : name + "/" + sub;
+        }
     }
 
 
-    private static Entity parseNode(TreeItem<DataTreeItem> item) {
+    public static Entity parseNode(TreeItem<DataTreeItem> item) {
         var isSubscription = item.getValue().getType() == NodeType.SUBSCRIPTION;
         var entity = isSubscription ? item.getParent().getValue().getName() : item.getValue().getName();
         var subEntity = isSubscription ? item.getValue().getName() : "";
@@ -281,7 +428,7 @@ public class MessageUtils {
         return message;
     }
 
-    private static ServiceBusMessage cloneMessage(ServiceBusReceivedMessage original) {
+    public static ServiceBusMessage cloneMessage(ServiceBusReceivedMessage original) {
         BinaryData bodyData = switch (original.getRawAmqpMessage().getBody().getBodyType()) {
             case VALUE -> BinaryData.fromObject(original.getBody().toObject(Object.class));
             case DATA -> original.getBody();
@@ -294,41 +441,54 @@ public class MessageUtils {
         return message;
     }
 
-    private static Long addCount(ServiceBusReceiverClient rc, ServiceBusReceivedMessage msg) {
-        return 1L;
+    public static String saveMessages(File folder, List<ServiceBusReceivedMessage> messages) throws IOException {
+        return saveMessages(folder, messages, new ProgressMeter());
     }
 
-    public static String saveMessages(File folder, List<ServiceBusReceivedMessage> messages) throws IOException {
+    public static String saveMessages(File folder, List<ServiceBusReceivedMessage> messages, ProgressMeter meter) throws IOException {
         StringBuffer retVal = new StringBuffer();
+        meter.setTotal(messages.size());
         for (var msg : messages) {
-            var serviceBusMessageData = MapperUtils.toServiceBusMessageData(msg);
-            String safeMessageId = msg.getMessageId() != null ? msg.getMessageId().replaceAll("[\\\\/:*?\"<>|]", "_") : "null";
-            var fileName = String.format("%s-%s.json", msg.getSequenceNumber(), safeMessageId);
-            LogUtils.log("Saving message to %s", fileName);
-            Path filePath = folder.toPath().resolve(fileName);
-            JsonFileUtil.writeToFile(filePath.toFile(), serviceBusMessageData);
+            if (meter.isCancelled()) break;
+            var fileName = saveData(folder, msg.getSequenceNumber(), MapperUtils.toServiceBusMessageData(msg));
             retVal.append(fileName).append("\n");
+            meter.add(1);
         }
         return retVal.toString();
     }
 
-    public static String extractBody(ServiceBusReceivedMessage message) throws IOException {
-        if (message == null || message.getRawAmqpMessage() == null) return null;
-        AmqpMessageBodyType bodyType = message.getRawAmqpMessage().getBody().getBodyType();
-        return switch (bodyType) {
-            case DATA -> {
-                byte[] bytes = message.getBody().toBytes();
-                yield new String(bytes, StandardCharsets.UTF_8);
-            }
-            case VALUE -> {
-                Object value = message.getRawAmqpMessage().getBody().getValue();
-                yield value != null ? value.toString() : "";
-            }
-            case SEQUENCE -> {
-                List<?> sequence = message.getRawAmqpMessage().getBody().getSequence();
-                yield sequence != null ? sequence.toString() : "";
+    /** Saves table rows from their spilled copies, peeking again only the ones that were not spilled. */
+    public static String saveRows(File folder, List<MessageRow> rows, ProgressMeter meter) throws IOException {
+        StringBuffer retVal = new StringBuffer();
+        meter.setTotal(rows.size());
+        for (var row : rows) {
+            if (meter.isCancelled()) break;
+            var data = row.data();
+            if (data == null) data = MapperUtils.toServiceBusMessageData(row.rehydrate().join(), row.store().scope());
+            if (data == null) {
+                LogUtils.log("Message %d is no longer in the entity, skipped", row.sequenceNumber());
+                continue;
             }
-        };
+            var fileName = saveData(folder, row.sequenceNumber(), data);
+            retVal.append(fileName).append("\n");
+            meter.add(1);
+        }
+        return retVal.toString();
+    }
+
+    private static String saveData(File folder, long sequenceNumber, ServiceBusMessageData data) throws IOException {
+        String safeMessageId = data.getMessageId() != null ? data.getMessageId().replaceAll("[\\\\/:*?\"<>|]", "_") : "null";
+        var fileName = String.format("%s-%s.json", sequenceNumber, safeMessageId);
+        LogUtils.log("Saving message to %s", fileName);
+        Path filePath = folder.toPath().resolve(fileName);
+        JsonFileUtil.writeToFile(filePath.toFile(), data);
+        return fileName;
+    }
+
+    /** The body as text, decoded once per message of {@code scope} through the {@link BodyCache}. */
+    public static String extractBody(BodyCache.Scope scope, ServiceBusReceivedMessage message) {
+        if (message == null || message.getRawAmqpMessage() == null) return null;
+        return BodyCache.get(scope, message).text();
     }
 
 }
@@ -0,0 +1,39 @@
+package com.dutils.servicebusviewer.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * MurmurHash64A: a fast non-cryptographic 64-bit hash reading eight bytes per step. Good enough to tell message
+ * bodies apart; not to defend against crafted collisions.
+ */
+public class Murmur64 {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long M = 0xC6A4A7935BD1E995L;
+    private static final int R = 47;
+
+    public static long hash(byte[] data, long seed) {
+        int length = data.length;
+        long h = seed ^ (length * M);
+        int blocks = length >>> 3;
+        for (int i = 0; i < blocks; i++) {
+            long k = (long) LONGS.get(data, i << 3);
+            k *= M;
+            k ^= k >>> R;
+            k *= M;
+            h ^= k;
+            h *= M;
+        }
+        int tail = blocks << 3;
+        int remaining = length - tail;
+        if (remaining > 0) {
+            for (int i = remaining - 1; i >= 0; i--) h ^= (data[tail + i] & 0xFFL) << (8 * i);
+            h *= M;
+        }
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+}
@@ -0,0 +1,109 @@
+package com.dutils.servicebusviewer.utils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts processed messages for a long-running operation and derives the live rate from it.
+ * Safe to update from many worker threads; the rate is sampled over a sliding one-second window.
+ */
+public class ProgressMeter {
+    private static final long SAMPLE_NANOS = 1_000_000_000L;
+
+    private final LongAdder count = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private volatile long total = -1;
+    private volatile boolean cancelled;
+
+    private long lastSampleNanos = startNanos;
+    private long lastSampleCount;
+    private double rate;
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Messages per second over the last sample window. */
+    public synchronized double rate() {
+        long now = System.nanoTime();
+        long elapsed = now - lastSampleNanos;
+        if (elapsed >= SAMPLE_NANOS) {
+            long current = count.sum();
+            rate = (current - lastSampleCount) * 1e9 / elapsed;
+            lastSampleCount = current;
+            lastSampleNanos = now;
+        }
+        return rate;
+    }
+
+    public double averageRate() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : count.sum() / seconds;
+    }
+
+    /** Remaining seconds until {@link #total()} is reached, or -1 when unknown. */
+    public long etaSeconds() {
+        long remaining = total - count.sum();
+        double r = rate();
+        if (total < 0 || remaining <= 0 || r <= 0) return -1;
+        return (long) Math.ceil(remaining / r);
+    }
+
+    public String summary() {
+        long eta = etaSeconds();
+        return String.format("%,d%s msgs @ %,.0f msg/s%s",
+                count(),
+                total >= 0 ? "/" + String.format("%,d", total) : "",
+                rate(),
+                eta >= 0 ? String.format(" ETA %02d:%02d", eta / 60, eta % 60) : "");
+    }
+
+    /**
+     * Blocks until {@code work} finishes, calling {@code report} every {@code intervalSec} seconds meanwhile.
+     * An interrupt cancels the meter so the workers can wind down.
+     * Returns what made {@code work} fail, or null when it completed (or the wait was interrupted); callers
+     * must not treat a failed run as finished.
+     */
+    public Throwable await(CompletableFuture<?> work, int intervalSec, Runnable report) {
+        while (true) {
+            try {
+                work.get(intervalSec, TimeUnit.SECONDS);
+                return null;
+            } catch (TimeoutException e) {
+                report.run();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                return e.getCause() != null ? e.getCause() : e;
+            } catch (CancellationException e) {
+                return e;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.dutils.servicebusviewer.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate most frequent strings of an unbounded stream in constant memory. Counts go to a count-min sketch;
+ * only a few {@link #CANDIDATES} keys with their estimates are remembered, a key replacing the weakest
+ * candidate once its estimate passes it. Counts may be over-estimated, never under. Not thread-safe.
+ */
+public class TopK {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 2048;
+    private static final int CANDIDATES = 64;
+
+    public record Entry(String key, long count) {
+    }
+
+    private final long[][] sketch = new long[DEPTH][WIDTH];
+    private final Map<String, Long> candidates = new HashMap<>();
+    // never above the smallest candidate estimate, so most adds skip the scan for it
+    private long floor;
+
+    public void add(String key) {
+        if (key == null) key = "(none)";
+        long estimate = increment(key);
+        if (candidates.containsKey(key) || candidates.size() < CANDIDATES) {
+            candidates.put(key, estimate);
+            return;
+        }
+        if (estimate <= floor) return;
+        String weakest = null;
+        long weakestCount = Long.MAX_VALUE;
+        for (var candidate : candidates.entrySet()) {
+            if (candidate.getValue() < weakestCount) {
+                weakest = candidate.getKey();
+                weakestCount = candidate.getValue();
+            }
+        }
+        if (estimate > weakestCount) {
+            candidates.remove(weakest);
+            candidates.put(key, estimate);
+        } else {
+            floor = weakestCount;
+        }
+    }
+
+    /** The {@code k} keys with the highest estimated counts, highest first. */
+    public List<Entry> top(int k) {
+        var entries = new ArrayList<Entry>(candidates.size());
+        candidates.forEach((key, count) -> entries.add(new Entry(key, count)));
+        entries.sort((a, b) -> Long.compare(b.count(), a.count()));
+        return entries.subList(0, Math.min(k, entries.size()));
+    }
+
+    private long increment(String key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int slot = Math.floorMod(mix(hash, row), WIDTH);
+            estimate = Math.min(estimate, ++sketch[row][slot]);
+        }
+        return estimate;
+    }
+
+    private static int mix(int hash, int row) {
+        int h = hash * (0x9E3779B1 + 2 * row) + row;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+}
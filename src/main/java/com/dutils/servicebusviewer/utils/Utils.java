@@ -10,7 +10,9 @@ import com.dutils.servicebusviewer.model.DataTreeItem;
 import com.dutils.servicebusviewer.model.NodeType;
 import com.fasterxml.jackson.core.type.TypeReference;
 import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
 import javafx.scene.Parent;
+import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
@@ -25,6 +27,7 @@ import org.kordamp.ikonli.javafx.FontIcon;
 
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -85,6 +88,30 @@ public class Utils {
         column.setPrefWidth(width);
         return column;
     }
+
+    /**
+     * Column for rows that are their own cell value (see {@link com.dutils.servicebusviewer.model.MessageRow}):
+     * cells read the field straight from the row, so rendering allocates no value wrapper. Sorts by {@code key}.
+     */
+    public static <T extends ObservableValue<T>> TableColumn<T, T> createRowColumn(
+            String title,
+            Function<T, String> text,
+            Comparator<T> key,
+            double width
+    ) {
+        TableColumn<T, T> column = new TableColumn<>(title);
+        column.setCellValueFactory(TableColumn.CellDataFeatures::getValue);
+        column.setCellFactory(c -> new TableCell<>() {
+            @Override
+            protected void updateItem(T row, boolean empty) {
+                super.updateItem(row, empty);
+                setText(empty || row == null ? null : text.apply(row));
+            }
+        });
+        column.setComparator(key);
+        column.setPrefWidth(width);
+        return column;
+    }
     public static void status(String str) {
         ApplicationContext.getInstance().getMainUIController().statusText.setText(str);
     }
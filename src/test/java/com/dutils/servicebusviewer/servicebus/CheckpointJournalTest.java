@@ -0,0 +1,81 @@
+package com.dutils.servicebusviewer.servicebus;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointJournalTest {
+    // a type byte and a sequence number
+    private static final int RECORD_SIZE = 9;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenedJournalRecoversSentAndCompletedRecords() throws IOException {
+        var file = dir.resolve("move.journal");
+        try (var journal = new CheckpointJournal(file)) {
+            journal.markSent(new long[]{1, 2, 3});
+            journal.markCompleted(1);
+            journal.markCompleted(2);
+        }
+        try (var journal = new CheckpointJournal(file)) {
+            assertEquals(5, journal.recovered());
+            assertEquals(3, journal.sentCount());
+            assertEquals(2, journal.completedCount());
+            assertTrue(journal.isSent(3));
+            assertFalse(journal.isSent(4));
+        }
+    }
+
+    @Test
+    void tornTrailingRecordIsDroppedAndOverwritten() throws IOException {
+        var file = dir.resolve("restore.journal");
+        try (var journal = new CheckpointJournal(file)) {
+            journal.markSent(new long[]{10, 11});
+        }
+        // a crash in the middle of a record leaves its first bytes only
+        Files.write(file, new byte[]{'S', 0, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        try (var journal = new CheckpointJournal(file)) {
+            assertEquals(2, journal.recovered());
+            assertEquals(2, journal.sentCount());
+            assertEquals(2L * RECORD_SIZE, Files.size(file));
+            journal.markSent(new long[]{12});
+        }
+        try (var journal = new CheckpointJournal(file)) {
+            assertEquals(3, journal.recovered());
+            assertTrue(journal.isSent(10));
+            assertTrue(journal.isSent(12));
+        }
+    }
+
+    @Test
+    void completedRecordsAreFlushedOnClose() throws IOException {
+        var file = dir.resolve("dlq.journal");
+        try (var journal = new CheckpointJournal(file)) {
+            for (long seq = 0; seq < 3000; seq++) journal.markCompleted(seq);
+        }
+        assertEquals(3000L * RECORD_SIZE, Files.size(file));
+        try (var journal = new CheckpointJournal(file)) {
+            assertEquals(3000, journal.completedCount());
+        }
+    }
+
+    @Test
+    void finishDeletesTheJournal() throws IOException {
+        var file = dir.resolve("done.journal");
+        var journal = new CheckpointJournal(file);
+        journal.markSent(new long[]{1});
+        journal.finish();
+        assertFalse(Files.exists(file));
+    }
+}
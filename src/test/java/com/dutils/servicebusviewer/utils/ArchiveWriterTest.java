@@ -0,0 +1,121 @@
+package com.dutils.servicebusviewer.utils;
+
+import com.dutils.servicebusviewer.model.ArchivedMessage;
+import com.dutils.servicebusviewer.model.ServiceBusMessageData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveWriterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void readerFindsEveryBlockThroughTheIndex() throws IOException {
+        var file = dir.resolve("export.ndjson.gz");
+        var encoded = List.of(ArchiveWriter.encode(records(1, 3)), ArchiveWriter.encode(records(4, 5)),
+                ArchiveWriter.encode(records(6, 6)));
+        try (var writer = new ArchiveWriter(file)) {
+            for (var block : encoded) writer.append(block);
+            writer.finish();
+            assertEquals(6, writer.count());
+        }
+
+        try (var reader = new ArchiveReader(file)) {
+            assertEquals(6, reader.count());
+            var blocks = reader.blocks();
+            assertEquals(3, blocks.size());
+            long offset = 0;
+            for (int i = 0; i < blocks.size(); i++) {
+                assertEquals(offset, blocks.get(i).offset());
+                assertEquals(encoded.get(i).first(), blocks.get(i).first());
+                assertEquals(encoded.get(i).last(), blocks.get(i).last());
+                assertEquals(encoded.get(i).count(), blocks.get(i).count());
+                offset += encoded.get(i).bytes().length;
+            }
+            var second = ArchiveReader.decode(reader.read(1));
+            assertEquals(List.of(4L, 5L), second.stream().map(ArchivedMessage::sequenceNumber).toList());
+            assertEquals("body 5", second.get(1).message().getBody());
+        }
+    }
+
+    @Test
+    void archiveIsPlainConcatenatedGzip() throws IOException {
+        var file = dir.resolve("export.ndjson.gz");
+        try (var writer = new ArchiveWriter(file)) {
+            writer.append(ArchiveWriter.encode(records(1, 2)));
+            writer.finish();
+        }
+
+        var lines = new String(new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(file))).readAllBytes(),
+                StandardCharsets.UTF_8).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].contains("\"sequenceNumber\":1"));
+        assertTrue(lines[2].startsWith("{\"" + ArchiveWriter.INDEX_KEY + "\""));
+        assertEquals(ArchiveWriter.FOOTER_PAYLOAD, lines[3].length() + 1);
+    }
+
+    @Test
+    void footerIsAStoredMemberPointingAtTheIndex() throws IOException {
+        var file = dir.resolve("export.ndjson.gz");
+        var block = ArchiveWriter.encode(records(1, 10));
+        try (var writer = new ArchiveWriter(file)) {
+            writer.append(block);
+            writer.finish();
+        }
+
+        var bytes = Files.readAllBytes(file);
+        var footer = Arrays.copyOfRange(bytes, bytes.length - ArchiveWriter.FOOTER_MEMBER, bytes.length);
+        assertEquals((byte) 0x1f, footer[0]);
+        assertEquals((byte) 0x8b, footer[1]);
+        // a final, stored deflate block right after the 10-byte header
+        assertEquals(1, footer[10]);
+        var payload = new String(footer, 15, ArchiveWriter.FOOTER_PAYLOAD, StandardCharsets.US_ASCII);
+        assertEquals(String.format("{\"%s\":\"%016x\"}\n", ArchiveWriter.FOOTER_KEY, block.bytes().length), payload);
+    }
+
+    @Test
+    void closeWithoutFinishLeavesNothingBehind() throws IOException {
+        var file = dir.resolve("export.ndjson.gz");
+        try (var writer = new ArchiveWriter(file)) {
+            writer.append(ArchiveWriter.encode(records(1, 2)));
+        }
+
+        assertFalse(Files.exists(file));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void fileWithoutFooterIsRejected() throws IOException {
+        var file = dir.resolve("plain.gz");
+        Files.write(file, ArchiveWriter.encode(records(1, 100)).bytes());
+        assertThrows(IOException.class, () -> new ArchiveReader(file));
+    }
+
+    private static List<ArchivedMessage> records(long first, long last) {
+        var time = OffsetDateTime.of(2024, 1, 31, 13, 45, 0, 0, ZoneOffset.UTC);
+        var records = new ArrayList<ArchivedMessage>();
+        LongStream.rangeClosed(first, last).forEach(seq ->
+                records.add(new ArchivedMessage(seq, time, 1, null, null, new ServiceBusMessageData("body " + seq))));
+        return records;
+    }
+}
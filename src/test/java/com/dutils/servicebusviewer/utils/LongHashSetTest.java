@@ -0,0 +1,64 @@
+package com.dutils.servicebusviewer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashSetTest {
+
+    @Test
+    void removeKeepsTheRestOfTheProbeChainReachable() {
+        // consecutive keys in a small table form long clusters that wrap around the end of the array
+        var set = new LongHashSet(4);
+        for (long key = 0; key < 200; key++) set.add(key);
+        for (long key = 0; key < 200; key += 2) assertTrue(set.remove(key));
+
+        assertEquals(100, set.size());
+        for (long key = 0; key < 200; key++) assertEquals(key % 2 == 1, set.contains(key), "key " + key);
+    }
+
+    @Test
+    void matchesHashSetUnderRandomAddsAndRemoves() {
+        var random = new Random(42);
+        var set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextBoolean()) assertEquals(expected.add(key), set.add(key));
+            else assertEquals(expected.remove(key), set.remove(key));
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (long key = 0; key < 2_000; key++) assertEquals(expected.contains(key), set.contains(key), "key " + key);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(),
+                Arrays.stream(set.toArray()).sorted().toArray());
+    }
+
+    @Test
+    void removingEveryKeyLeavesAnEmptySet() {
+        var set = new LongHashSet();
+        for (long key = 0; key < 1_000; key++) set.add(key * 31);
+        for (long key = 0; key < 1_000; key++) assertTrue(set.remove(key * 31));
+
+        assertTrue(set.isEmpty());
+        assertEquals(-1, set.max());
+        assertFalse(set.remove(0));
+    }
+
+    @Test
+    void negativeKeysAreRejected() {
+        var set = new LongHashSet();
+        assertThrows(IllegalArgumentException.class, () -> set.add(-1));
+        assertFalse(set.contains(-1));
+        assertFalse(set.remove(-1));
+    }
+}
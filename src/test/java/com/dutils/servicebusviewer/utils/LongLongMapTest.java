@@ -0,0 +1,54 @@
+package com.dutils.servicebusviewer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongLongMapTest {
+
+    @Test
+    void putStopsAtTheBudgetButStillUpdatesKnownKeys() {
+        // 256 bytes are 16 slots, filled up to the 0.7 load factor
+        var map = LongLongMap.withBudget(256);
+        int accepted = 0;
+        for (long key = 1; key <= 100; key++) {
+            if (map.put(key, key * 10)) accepted++;
+        }
+
+        assertEquals(11, accepted);
+        assertEquals(11, map.size());
+        assertFalse(map.put(1_000, 1));
+        assertTrue(map.put(1, 99));
+        assertEquals(99, map.get(1, -1));
+        assertEquals(11, map.size());
+    }
+
+    @Test
+    void budgetIsRoundedDownToAPowerOfTwoOfSlots() {
+        // 1000 bytes hold 62 slots; the map takes 32 and so accepts 22 keys
+        var map = LongLongMap.withBudget(1000);
+        int accepted = 0;
+        for (long key = 1; key <= 100; key++) {
+            if (map.put(key, key)) accepted++;
+        }
+        assertEquals(22, accepted);
+    }
+
+    @Test
+    void getFindsEveryKeyAndReportsMissingOnes() {
+        var map = LongLongMap.withBudget(1 << 20);
+        for (long key = 1; key <= 10_000; key++) assertTrue(map.put(key * 0x1F3D5B79L, key));
+
+        for (long key = 1; key <= 10_000; key++) assertEquals(key, map.get(key * 0x1F3D5B79L, -1));
+        assertEquals(-1, map.get(7, -1));
+    }
+
+    @Test
+    void zeroKeyIsReserved() {
+        var map = LongLongMap.withBudget(256);
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, 1));
+    }
+}